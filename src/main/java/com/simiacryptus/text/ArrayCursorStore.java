@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Cursor table stored as parallel primitive arrays, one per {@link CursorData} field.
+ */
+class ArrayCursorStore implements CursorStore {
+  private int[] documentIds;
+  private int[] positions;
+  private int length = 0;
+
+  public ArrayCursorStore(int capacity) {
+    capacity = Math.max(capacity, 1);
+    this.documentIds = new int[capacity];
+    this.positions = new int[capacity];
+  }
+
+  protected ArrayCursorStore(@Nonnull ArrayCursorStore copyFrom) {
+    synchronized (copyFrom) {
+      this.length = copyFrom.length;
+      this.documentIds = Arrays.copyOf(copyFrom.documentIds, copyFrom.length);
+      this.positions = Arrays.copyOf(copyFrom.positions, copyFrom.length);
+    }
+  }
+
+  @Override
+  public int getMemorySize() {
+    return documentIds.length * CursorType.INSTANCE.getSize();
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int getDocumentId(int index) {
+    return documentIds[index];
+  }
+
+  @Override
+  public int getPosition(int index) {
+    return positions[index];
+  }
+
+  @Override
+  public int getPosition(int index, int documentId) {
+    return positions[index];
+  }
+
+  @Override
+  public long getCorpusOffset(int index, @Nonnull DocumentStore documents) {
+    return documents.getStart(documentIds[index]) + positions[index];
+  }
+
+  @Override
+  public long getEntry(int index) {
+    return ((long) documentIds[index] << 32) | (positions[index] & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public void putEntries(int index, @Nonnull long[] entries, int count) {
+    for (int i = 0; i < count; i++) {
+      documentIds[index + i] = (int) (entries[i] >>> 32);
+      positions[index + i] = (int) entries[i];
+    }
+  }
+
+  @Override
+  public void set(int index, int documentId, int position) {
+    documentIds[index] = documentId;
+    positions[index] = position;
+  }
+
+  @Override
+  public synchronized int add(int documentId, int position) {
+    ensureCapacity(length + 1);
+    int index = length++;
+    documentIds[index] = documentId;
+    positions[index] = position;
+    return index;
+  }
+
+  @Override
+  public synchronized int addAll(int documentId, @Nonnull int[] positions) {
+    ensureCapacity(length + positions.length);
+    int firstIndex = length;
+    Arrays.fill(this.documentIds, firstIndex, firstIndex + positions.length, documentId);
+    System.arraycopy(positions, 0, this.positions, firstIndex, positions.length);
+    length += positions.length;
+    return firstIndex;
+  }
+
+  @Nonnull
+  @Override
+  public ArrayCursorStore copy(@Nonnull DocumentStore documents) {
+    return new ArrayCursorStore(this);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (documentIds.length < capacity) {
+      int newCapacity = Math.max(capacity, documentIds.length * 2);
+      documentIds = Arrays.copyOf(documentIds, newCapacity);
+      positions = Arrays.copyOf(positions, newCapacity);
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof CursorStore))
+      return false;
+    return CursorStore.equals(this, (CursorStore) o);
+  }
+
+  @Override
+  public int hashCode() {
+    return CursorStore.hashCode(this);
+  }
+}
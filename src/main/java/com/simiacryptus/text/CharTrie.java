@@ -28,25 +28,36 @@ import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static com.simiacryptus.text.NodewalkerCodec.*;
 
 public class CharTrie {
-  protected final SerialArrayList<NodeData> nodes;
+  private static final int LINEAR_SCAN = 8;
+  protected final NodeStore nodes;
   @Nullable
   protected int[] parentIndex = null;
   @Nullable
   protected int[] godparentIndex = null;
+  @Nullable
+  protected short[] depthIndex = null;
+  @Nullable
+  protected ChildTable childTable = null;
+  private boolean indexesShared = false;
+
+  public CharTrie(@Nonnull SerialArrayList<NodeData> nodes) {
+    this(new NodeStore(nodes));
+  }
 
-  public CharTrie(SerialArrayList<NodeData> nodes) {
+  CharTrie(NodeStore nodes) {
     super();
     this.nodes = nodes;
   }
 
   public CharTrie() {
-    this(new SerialArrayList<>(NodeType.INSTANCE, new NodeData(END_OF_STRING, (short) -1, -1, -1, 0)));
+    this(new NodeStore(new NodeData(END_OF_STRING, (short) -1, -1, -1, 0)));
   }
 
   public CharTrie(@Nonnull CharTrie charTrie) {
@@ -55,11 +66,14 @@ public class CharTrie {
         : Arrays.copyOf(charTrie.parentIndex, charTrie.parentIndex.length);
     this.godparentIndex = null == charTrie.godparentIndex ? null
         : Arrays.copyOf(charTrie.godparentIndex, charTrie.godparentIndex.length);
+    this.depthIndex = null == charTrie.depthIndex ? null
+        : Arrays.copyOf(charTrie.depthIndex, charTrie.depthIndex.length);
+    this.childTable = charTrie.childTable;
   }
 
   @Nonnull
   public TextAnalysis getAnalyzer() {
-    return new TextAnalysis(this.truncate().copy());
+    return new TextAnalysis(view());
   }
 
   @Nonnull
@@ -69,11 +83,11 @@ public class CharTrie {
 
   @Nonnull
   public TextGenerator getGenerator() {
-    return new TextGenerator(this.truncate().copy());
+    return new TextGenerator(view());
   }
 
   public long getIndexedSize() {
-    return this.nodes.get(0).cursorCount;
+    return this.nodes.getCursorCount(0);
   }
 
   public int getMemorySize() {
@@ -115,11 +129,45 @@ public class CharTrie {
     return reduceSimple(z, (left, right) -> (null == left ? 0 : left) + (null == right ? 0 : right));
   }
 
+  /**
+   * Sums all given tries at once; equivalent to folding them with {@link #add(CharTrie)}, without the intermediate
+   * results.
+   */
+  @Nonnull
+  public static CharTrie merge(@Nonnull List<? extends CharTrie> tries) {
+    return new TrieMerger(tries).merge();
+  }
+
+  /**
+   * Returns a read-only copy in which identical subtrees are shared; see {@link MinimizedCharTrie}.
+   */
+  @Nonnull
+  public MinimizedCharTrie minimize() {
+    return MinimizedCharTrie.minimize(this);
+  }
+
   @Nonnull
   public CharTrie product(@Nonnull CharTrie z) {
     return reduceSimple(z, (left, right) -> (null == left ? 0 : left) * (null == right ? 0 : right));
   }
 
+  /**
+   * Drops children with fewer than {@code minCount} cursors or outside the {@code maxChildren} most frequent of their
+   * parent, returning a densely renumbered copy; see {@link TriePruner} for budgets and fallback rollup.
+   */
+  @Nonnull
+  public CharTrie prune(long minCount, int maxChildren) {
+    return new TriePruner(this).setMinCount(minCount).setMaxChildren(maxChildren).prune();
+  }
+
+  /**
+   * Returns a densely renumbered copy with at most {@code maxNodes} nodes, dropping the least frequent first.
+   */
+  @Nonnull
+  public CharTrie compact(int maxNodes) {
+    return new TriePruner(this).setMaxNodes(maxNodes).prune();
+  }
+
   @Nonnull
   public CharTrie divide(@Nonnull CharTrie z, int factor) {
     return reduceSimple(z, (left, right) -> null == right ? 0 : (null == left ? 0 : left) * factor / right);
@@ -154,6 +202,40 @@ public class CharTrie {
     return root().traverse(search);
   }
 
+  public TrieNode traverse(@Nonnull CharSequence search, int from, int to) {
+    return root().traverse(search, from, to);
+  }
+
+  @Nonnull
+  public NodeCursor cursor() {
+    return new NodeCursor(this, 0);
+  }
+
+  /**
+   * Returns a matcher that streams the {@link #matchEnd(String)} node of every prefix of a text in a single pass.
+   */
+  @Nonnull
+  public ContextMatcher matcher() {
+    return new ContextMatcher(this);
+  }
+
+  /**
+   * Compiles this trie, taken as a word dictionary, into a multi-pattern matcher; see {@link DictionaryMatcher}.
+   */
+  @Nonnull
+  public DictionaryMatcher dictionaryMatcher() {
+    return DictionaryMatcher.compile(this);
+  }
+
+  /**
+   * Precomputes the {@code maxResults} most frequent complete entries below every node, for
+   * {@link CompletionIndex#complete(CharSequence, int)} lookups that do not walk the subtree.
+   */
+  @Nonnull
+  public CompletionIndex completionIndex(int maxResults) {
+    return CompletionIndex.build(this, maxResults);
+  }
+
   @Nullable
   public TrieNode matchEnd(@Nonnull String search) {
     if (search.isEmpty())
@@ -197,6 +279,41 @@ public class CharTrie {
     return new CharTrie(this);
   }
 
+  /**
+   * Returns an immutable copy with all derived indexes precomputed, safe to query from many threads at once.
+   */
+  @Nonnull
+  public FrozenCharTrie freeze() {
+    return new FrozenCharTrie(this);
+  }
+
+  public boolean isFrozen() {
+    return false;
+  }
+
+  /**
+   * Returns a trie without cursor data that shares this trie's node storage and indexes; either side copies what it
+   * modifies on first write.
+   */
+  @Nonnull
+  synchronized CharTrie view() {
+    CharTrie view = new CharTrie(nodes.share());
+    view.parentIndex = parentIndex;
+    view.godparentIndex = godparentIndex;
+    view.depthIndex = depthIndex;
+    view.childTable = childTable;
+    view.indexesShared = indexesShared = true;
+    return view;
+  }
+
+  /**
+   * Returns a trie whose counts may be modified in place: this one, or a copy if its storage is read-only.
+   */
+  @Nonnull
+  CharTrie writable() {
+    return this;
+  }
+
   @Override
   public boolean equals(@Nullable Object o) {
     if (this == o)
@@ -219,6 +336,16 @@ public class CharTrie {
         .collect(Collectors.toSet());
   }
 
+  /**
+   * Returns up to {@code limit} complete entries (paths followed by {@link NodewalkerCodec#END_OF_STRING}, such as the
+   * words of an {@link CharTrieIndex#indexWords} dictionary) within {@code maxEdits} insertions, deletions,
+   * substitutions or adjacent transpositions of {@code query}, ranked by edit distance and then by frequency.
+   */
+  @Nonnull
+  public List<TrieNode> fuzzyMatch(@Nonnull CharSequence query, int maxEdits, int limit) {
+    return new FuzzyMatcher(this, query, maxEdits).match(limit);
+  }
+
   public boolean contains(@Nonnull String text) {
     return traverse(text).getString().endsWith(text);
   }
@@ -227,8 +354,175 @@ public class CharTrie {
     return max(fn, maxResults, root());
   }
 
+  @Nonnull
+  TrieNode getNode(int index) {
+    return 0 == index ? root() : new TrieNode(this, index);
+  }
+
+  int findChild(int index, char token) {
+    ChildTable table = childTable;
+    if (null != table) {
+      int child = table.find(index, token);
+      if (ChildTable.UNKNOWN != child)
+        return child;
+    }
+    int min = nodes.getFirstChildIndex(index);
+    if (min < 0)
+      return -1;
+    int max = min + nodes.getNumberOfChildren(index) - 1;
+    if (max - min < LINEAR_SCAN) {
+      for (int i = min; i <= max; i++) {
+        char c = nodes.getToken(i);
+        if (c >= token)
+          return c == token ? i : -1;
+      }
+      return -1;
+    }
+    while (min <= max) {
+      int i = (min + max) >>> 1;
+      char c = nodes.getToken(i);
+      if (c < token) {
+        min = i + 1;
+      } else if (c > token) {
+        max = i - 1;
+      } else {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  int godparentOf(int index) {
+    if (0 == index)
+      return -1;
+    int cached = getGodparentIndex(index);
+    if (cached >= 0)
+      return cached;
+    int parent = getParentIndex(index);
+    int godparent = 0;
+    if (0 != parent) {
+      int greatgodparent = godparentOf(parent);
+      if (greatgodparent >= 0) {
+        godparent = Math.max(0, findChild(greatgodparent, nodes.getToken(index)));
+      }
+    }
+    setGodparentIndex(index, godparent);
+    return godparent;
+  }
+
+  int continuationOf(int index, char token) {
+    while (index >= 0) {
+      int child = findChild(index, token);
+      if (child >= 0)
+        return child;
+      index = godparentOf(index);
+    }
+    return -1;
+  }
+
+  /**
+   * False when nodes may be reachable along several paths, so that parents must be tracked by traversal.
+   */
+  boolean hasUniqueParents() {
+    return true;
+  }
+
+  int getParentIndex(int index) {
+    assert parentIndex != null;
+    return parentIndex[index];
+  }
+
+  /**
+   * Fills the parent, godparent and depth indexes for every node in one breadth-first pass, each level's nodes
+   * processed in parallel, so that later {@link TrieNode#godparent()} and continuation lookups are plain array reads.
+   * Also builds the direct-indexed child lookup for high fan-out nodes (see {@link ChildTable}).
+   */
+  @Nonnull
+  public CharTrie indexGodparents() {
+    int nodeCount = getNodeCount();
+    int[] parents = new int[nodeCount];
+    int[] godparents = new int[nodeCount];
+    short[] depths = new short[nodeCount];
+    indexLevels(parents, godparents, depths);
+    ChildTable table = ChildTable.build(nodes);
+    synchronized (this) {
+      parentIndex = parents;
+      godparentIndex = godparents;
+      depthIndex = depths;
+      childTable = table;
+      indexesShared = false;
+    }
+    return this;
+  }
+
+  /**
+   * Computes the parent, godparent and (optionally) depth of every node, one breadth-first level at a time. A node's
+   * godparent is the child of its parent's godparent with the same token, or the root if there is none.
+   */
+  void indexLevels(@Nonnull int[] parents, @Nonnull int[] godparents, @Nullable short[] depths) {
+    parents[0] = -1;
+    godparents[0] = -1;
+    int[] frontier = {0};
+    for (short depth = 1; frontier.length > 0; depth++) {
+      int[] level = frontier;
+      int[] offsets = new int[level.length + 1];
+      for (int i = 0; i < level.length; i++) {
+        boolean hasChildren = nodes.getFirstChildIndex(level[i]) >= 0;
+        offsets[i + 1] = offsets[i] + (hasChildren ? Math.max(0, nodes.getNumberOfChildren(level[i])) : 0);
+      }
+      int[] next = new int[offsets[level.length]];
+      short childDepth = depth;
+      IntStream.range(0, level.length).parallel().forEach(i -> {
+        int node = level[i];
+        int firstChild = nodes.getFirstChildIndex(node);
+        for (int j = 0; j < offsets[i + 1] - offsets[i]; j++) {
+          int child = firstChild + j;
+          parents[child] = node;
+          godparents[child] = 0 == node ? 0 : Math.max(0, findChild(godparents[node], nodes.getToken(child)));
+          if (null != depths)
+            depths[child] = childDepth;
+          next[offsets[i] + j] = child;
+        }
+      });
+      frontier = next;
+    }
+  }
+
+  /**
+   * Returns the tracked depth of a node, or -1 if depths are not tracked.
+   */
+  short getDepth(int index) {
+    return null == depthIndex || depthIndex.length <= index ? -1 : depthIndex[index];
+  }
+
+  int getGodparentIndex(int index) {
+    return null == godparentIndex || godparentIndex.length <= index ? -1 : godparentIndex[index];
+  }
+
+  void setGodparentIndex(int index, int godparent) {
+    if (null != godparentIndex && godparentIndex.length > index) {
+      godparentIndex[index] = godparent;
+    }
+  }
+
   synchronized void ensureParentIndexCapacity(int start, int length, int parentId) {
     int end = start + length;
+    childTable = null;
+    if (indexesShared) {
+      parentIndex = null == parentIndex ? null : Arrays.copyOf(parentIndex, parentIndex.length);
+      godparentIndex = null == godparentIndex ? null : Arrays.copyOf(godparentIndex, godparentIndex.length);
+      depthIndex = null == depthIndex ? null : Arrays.copyOf(depthIndex, depthIndex.length);
+      indexesShared = false;
+    }
+    // Depths are only tracked from a fresh trie onwards, or once indexGodparents() has filled them in
+    if (null == parentIndex) {
+      depthIndex = new short[end];
+    }
+    if (null != depthIndex) {
+      if (depthIndex.length < end)
+        depthIndex = Arrays.copyOf(depthIndex, Math.max(end, depthIndex.length * 2));
+      Arrays.fill(depthIndex, start, end, (short) (depthIndex[parentId] + 1));
+    }
     if (null == parentIndex) {
       parentIndex = new int[end];
       Arrays.fill(parentIndex, parentId);
@@ -257,18 +551,37 @@ public class CharTrie {
     }
   }
 
+  /**
+   * Recomputes interior cursor counts as the sum of their children's and lays cursor ranges out in child order.
+   * Children are always stored after their parent, so one reverse scan settles all totals and one forward scan all
+   * positions.
+   */
   @Nonnull
   CharTrie recomputeCursorDetails() {
-    godparentIndex = new int[getNodeCount()];
-    parentIndex = new int[getNodeCount()];
-    Arrays.fill(godparentIndex, 0, godparentIndex.length, -1);
-    Arrays.fill(parentIndex, 0, parentIndex.length, -1);
-    System.gc();
-    recomputeCursorTotals(root());
-    System.gc();
-    recomputeCursorPositions(root(), 0);
-    System.gc();
-    return this;
+    int nodeCount = getNodeCount();
+    for (int i = nodeCount - 1; i >= 0; i--) {
+      int firstChild = nodes.getFirstChildIndex(i);
+      int numberOfChildren = nodes.getNumberOfChildren(i);
+      if (firstChild < 0 || numberOfChildren <= 0)
+        continue;
+      assert firstChild > i;
+      long cursorCount = 0;
+      for (int j = 0; j < numberOfChildren; j++) {
+        cursorCount += nodes.getCursorCount(firstChild + j);
+      }
+      assert 0 < cursorCount;
+      nodes.setCursorCount(i, cursorCount);
+    }
+    nodes.setFirstCursorIndex(0, 0);
+    for (int i = 0; i < nodeCount; i++) {
+      int firstChild = nodes.getFirstChildIndex(i);
+      long position = nodes.getFirstCursorIndex(i);
+      for (int j = 0; firstChild >= 0 && j < nodes.getNumberOfChildren(i); j++) {
+        nodes.setFirstCursorIndex(firstChild + j, position);
+        position += nodes.getCursorCount(firstChild + j);
+      }
+    }
+    return indexGodparents();
   }
 
   @Nonnull
@@ -304,29 +617,6 @@ public class CharTrie {
     });
   }
 
-  @javax.annotation.Nullable
-  private NodeData recomputeCursorTotals(@Nonnull TrieNode node) {
-    assert parentIndex != null;
-    parentIndex[node.index] = null == node.getParent() ? -1 : node.getParent().index;
-    List<NodeData> newChildren = node.getChildren().map(child -> recomputeCursorTotals(child))
-        .collect(Collectors.toList());
-    if (newChildren.isEmpty())
-      return node.getData();
-    long cursorCount = newChildren.stream().mapToLong(n -> n.cursorCount).sum();
-    assert 0 < cursorCount;
-    return node.update(d -> d.setCursorCount(cursorCount));
-  }
-
-  private void recomputeCursorPositions(@Nonnull TrieNode node, final int position) {
-    node.update(n -> n.setFirstCursorIndex(position));
-    int childPosition = position;
-    Stream<TrieNode> stream = node.getChildren().map(x -> x);
-    for (TrieNode child : stream.collect(Collectors.toList())) {
-      recomputeCursorPositions(child, childPosition);
-      childPosition += child.getCursorCount();
-    }
-  }
-
   private void reduceSubtree(@Nullable TrieNode sourceNodeA, @Nullable TrieNode sourceNodeB, @Nonnull TrieNode destNode,
                              @Nonnull BiFunction<TrieNode, TrieNode, TreeMap<Character, Long>> fn) {
     destNode.writeChildren(fn.apply(sourceNodeA, sourceNodeB));
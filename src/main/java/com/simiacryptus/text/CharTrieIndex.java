@@ -19,43 +19,51 @@
 
 package com.simiacryptus.text;
 
-import com.simiacryptus.util.data.SerialArrayList;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class CharTrieIndex extends CharTrie {
 
-  protected final SerialArrayList<CursorData> cursors;
-  protected final ArrayList<CharSequence> documents;
+  private static final ThreadLocal<SplitBuffer> splitBuffers = ThreadLocal.withInitial(SplitBuffer::new);
 
-  private CharTrieIndex(SerialArrayList<NodeData> nodes, SerialArrayList<CursorData> cursors,
-                        ArrayList<CharSequence> documents) {
+  protected final CursorStore cursors;
+  protected final DocumentStore documents;
+  @Nullable
+  private int[] suffixLcp = null;
+
+  private CharTrieIndex(NodeStore nodes, DocumentStore documents,
+                        @Nonnull Function<DocumentStore, CursorStore> cursors) {
     super(nodes);
-    this.cursors = cursors;
+    this.cursors = cursors.apply(documents);
     this.documents = documents;
   }
 
   public CharTrieIndex(@Nonnull CharTrieIndex copyFrom) {
-    this(copyFrom.nodes.copy(), copyFrom.cursors.copy(), new ArrayList<>(copyFrom.documents));
+    this(copyFrom.nodes.copy(), copyFrom.documents.copy(), copyFrom.cursors::copy);
   }
 
   public CharTrieIndex() {
-    this(new SerialArrayList<>(NodeType.INSTANCE, new NodeData(NodewalkerCodec.END_OF_STRING, (short) -1, -1, -1, 0)),
-        new SerialArrayList<>(CursorType.INSTANCE), new ArrayList<>());
+    this(false);
+  }
+
+  /**
+   * @param packedCursors store cursors as offsets into the concatenated documents rather than as (document,
+   *                      position) pairs; smaller, at the cost of a binary search to resolve the document
+   */
+  public CharTrieIndex(boolean packedCursors) {
+    this(new NodeStore(new NodeData(NodewalkerCodec.END_OF_STRING, (short) -1, -1, -1, 0)), new DocumentStore(0),
+        documents -> packedCursors ? new PackedCursorStore(documents, 0) : new ArrayCursorStore(0));
   }
 
   @Override
   public long getIndexedSize() {
-    return documents.isEmpty() ? super.getIndexedSize() : documents.stream().mapToInt(doc -> doc.length()).sum();
+    return documents.isEmpty() ? super.getIndexedSize() : documents.getTextLength();
   }
 
   @Override
@@ -73,6 +81,18 @@ public class CharTrieIndex extends CharTrie {
     return create(documents, maxLevels, minWeight, false);
   }
 
+  /**
+   * Full-text index built from a suffix array of the whole corpus rather than by repeatedly regrouping cursors; the
+   * resulting node tree is the same as {@link #indexFulltext(Collection, int, int)} produces for a single block.
+   */
+  @Nonnull
+  public static CharTrieIndex indexFulltextBySuffixArray(@Nonnull Collection<CharSequence> documents, int maxLevels,
+                                                         int minWeight) {
+    CharTrieIndex trie = new CharTrieIndex(true);
+    documents.forEach(trie::addDocument);
+    return new IndexBuilder(trie).setMaxLevels(maxLevels).setMinWeight(minWeight).setSuffixArray(true).build();
+  }
+
   @Nonnull
   public static CharTrie create(@Nonnull Collection<CharSequence> documents, int maxLevels, int minWeight, boolean words) {
     return create(documents, maxLevels, minWeight, getCursorInit(words));
@@ -91,14 +111,15 @@ public class CharTrieIndex extends CharTrie {
       }
     }
     a.add(b);
-    return a.parallelStream().map(list -> {
+    List<CharTrie> shards = a.parallelStream().map(list -> {
       CharTrieIndex trie = new CharTrieIndex();
       list.forEach(s -> {
         trie.addDocument(s, cursorSeeds.apply(s));
       });
       trie.index(maxLevels, minWeight);
       return (CharTrie) trie;
-    }).reduce((l, r) -> l.add(r)).get();
+    }).collect(Collectors.toList());
+    return 1 == shards.size() ? shards.get(0) : CharTrie.merge(shards);
   }
 
   @NotNull
@@ -114,7 +135,7 @@ public class CharTrieIndex extends CharTrie {
 
   @Nonnull
   public CharTrie truncate() {
-    return new CharTrie(this);
+    return view();
   }
 
   @Nonnull
@@ -129,29 +150,130 @@ public class CharTrieIndex extends CharTrie {
 
   @Nonnull
   public CharTrieIndex index(int maxLevels, int minWeight) {
+    return index(maxLevels, minWeight, false);
+  }
+
+  @Nonnull
+  public CharTrieIndex index(int maxLevels, int minWeight, boolean parallel) {
+    return new IndexBuilder(this).setMaxLevels(maxLevels).setMinWeight(minWeight).setParallel(parallel).build();
+  }
+
+  void split(int index, short depth) {
+    NodeStore children = new NodeStore(0);
+    int numberOfChildren = partition(index, depth, children);
+    attachChildren(index, nodes.addAll(children), numberOfChildren);
+  }
 
-    AtomicInteger numberSplit = new AtomicInteger(0);
-    int depth = -1;
-    do {
-      numberSplit.set(0);
-      if (0 == ++depth) {
-        numberSplit.incrementAndGet();
-        root().split();
-      } else {
-        root().streamDecendents(depth).forEach(node -> {
-          TrieNode godparent = node.godparent();
-          if (node.getDepth() < maxLevels) {
-            if (null == godparent || godparent.getCursorCount() > minWeight) {
-              if (node.getChar() != NodewalkerCodec.END_OF_STRING || node.getDepth() == 0) {
-                ((IndexNode) node).split();
-                numberSplit.incrementAndGet();
-              }
-            }
-          }
-        });
+  /**
+   * Stable counting sort of the node's cursor range by next token: one pass builds a histogram, a second scatters the
+   * cursors into a per-thread scratch buffer which is then copied back in place. Child nodes are appended to
+   * {@code children} in token order and the child count is returned.
+   */
+  int partition(int index, short depth, @Nonnull NodeStore children) {
+    int firstCursorIndex = (int) nodes.getFirstCursorIndex(index);
+    int cursorCount = (int) nodes.getCursorCount(index);
+    if (null != suffixLcp) {
+      return partitionSorted(firstCursorIndex, cursorCount, depth, children);
+    }
+    SplitBuffer buffer = splitBuffers.get().reserve(cursorCount);
+    char[] tokens = buffer.tokens;
+    char[] keys = buffer.keys;
+    int[] counts = buffer.counts;
+    // Unless this node is past a terminator, no cursor in it can read beyond its own document's slot
+    boolean inDocument = 0 == depth || NodewalkerCodec.END_OF_STRING != nodes.getToken(index);
+    int numberOfChildren = 0;
+    for (int i = 0; i < cursorCount; i++) {
+      int cursor = firstCursorIndex + i;
+      char token = inDocument ? documents.getChar(cursors.getCorpusOffset(cursor, documents) + depth)
+          : getNextToken(cursor, depth);
+      tokens[i] = token;
+      if (0 == counts[token]++) {
+        keys[numberOfChildren++] = token;
       }
-    } while (numberSplit.get() > 0);
-    return this;
+    }
+    Arrays.sort(keys, 0, numberOfChildren);
+    int offset = 0;
+    for (int i = 0; i < numberOfChildren; i++) {
+      char token = keys[i];
+      int count = counts[token];
+      children.add(token, (short) -1, -1, count, firstCursorIndex + offset);
+      counts[token] = offset;
+      offset += count;
+    }
+    long[] entries = buffer.entries;
+    for (int i = 0; i < cursorCount; i++) {
+      entries[counts[tokens[i]]++] = cursors.getEntry(firstCursorIndex + i);
+    }
+    cursors.putEntries(firstCursorIndex, entries, cursorCount);
+    for (int i = 0; i < numberOfChildren; i++) {
+      counts[keys[i]] = 0;
+    }
+    return numberOfChildren;
+  }
+
+  /**
+   * Cursors already in suffix order need no reordering: child boundaries are wherever the common prefix with the
+   * previous suffix ends at this depth.
+   */
+  private int partitionSorted(int firstCursorIndex, int cursorCount, short depth, @Nonnull NodeStore children) {
+    int[] lcp = suffixLcp;
+    int end = firstCursorIndex + cursorCount;
+    int numberOfChildren = 0;
+    int start = firstCursorIndex;
+    for (int i = firstCursorIndex + 1; i <= end; i++) {
+      if (i == end || lcp[i] <= depth) {
+        children.add(getNextToken(start, depth), (short) -1, -1, i - start, start);
+        numberOfChildren++;
+        start = i;
+      }
+    }
+    return numberOfChildren;
+  }
+
+  /**
+   * Reorders the cursors into suffix-array order and keeps the LCP array, so that subsequent splits only need to find
+   * boundaries. Requires a cursor at every document position, as {@link #addDocument(CharSequence)} creates.
+   */
+  void sortSuffixes() {
+    if (root().getNumberOfChildren() >= 0) {
+      throw new IllegalStateException("Tree sorting has begun");
+    }
+    long textLength = documents.getCorpusLength();
+    if (textLength >= Integer.MAX_VALUE) {
+      throw new IllegalStateException("Corpus too large for a suffix array: " + textLength);
+    }
+    if (cursors.length() != textLength) {
+      throw new IllegalStateException("Suffix array construction requires a cursor at every document position");
+    }
+    int[] text = new int[(int) textLength];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = documents.getChar(i);
+    }
+    int[] suffixes = SuffixArray.sort(text, Character.MAX_VALUE);
+    int[] lcp = SuffixArray.lcp(text, suffixes);
+    for (int i = 0; i < suffixes.length; i++) {
+      int documentId = documents.getDocumentAt(suffixes[i]);
+      int position = (int) (suffixes[i] - documents.getStart(documentId));
+      cursors.set(i, documentId, position);
+      // Suffixes only extend to their own document's terminator
+      lcp[i] = Math.min(lcp[i], documents.length(documentId) - position + 1);
+    }
+    suffixLcp = lcp;
+  }
+
+  void clearSuffixes() {
+    suffixLcp = null;
+  }
+
+  private char getNextToken(int cursor, short depth) {
+    int documentId = cursors.getDocumentId(cursor);
+    return documents.charAt(documentId, cursors.getPosition(cursor, documentId) + depth);
+  }
+
+  void attachChildren(int index, int firstChildIndex, int numberOfChildren) {
+    ensureParentIndexCapacity(firstChildIndex, numberOfChildren, index);
+    nodes.setFirstChildIndex(index, firstChildIndex);
+    nodes.setNumberOfChildren(index, (short) numberOfChildren);
   }
 
   public int addDictionary(CharSequence document) {
@@ -166,14 +288,9 @@ public class CharTrieIndex extends CharTrie {
     if (root().getNumberOfChildren() >= 0) {
       throw new IllegalStateException("Tree sorting has begun");
     }
-    final int index;
-    synchronized (this) {
-      index = documents.size();
-      documents.add(document);
-    }
-    cursors.addAll(cursorSeeds.mapToObj(i -> new CursorData(index, i))
-        .collect(Collectors.toList()));
-    nodes.update(0, node -> node.setCursorCount(cursors.length()));
+    int index = documents.add(document);
+    cursors.addAll(index, cursorSeeds.toArray());
+    nodes.setCursorCount(0, cursors.length());
     return index;
   }
 
@@ -200,10 +317,33 @@ public class CharTrieIndex extends CharTrie {
     return root().traverse(search);
   }
 
+  @Nonnull
+  @Override
+  IndexNode getNode(int index) {
+    return 0 == index ? root() : new IndexNode(this, index);
+  }
+
   @Nonnull
   @Override
   CharTrieIndex recomputeCursorDetails() {
     return (CharTrieIndex) super.recomputeCursorDetails();
   }
 
-}
\ No newline at end of file
+  private static class SplitBuffer {
+    final int[] counts = new int[Character.MAX_VALUE + 1];
+    char[] tokens = new char[0];
+    char[] keys = new char[0];
+    long[] entries = new long[0];
+
+    @Nonnull
+    SplitBuffer reserve(int capacity) {
+      if (tokens.length < capacity) {
+        tokens = new char[capacity];
+        keys = new char[capacity];
+        entries = new long[capacity];
+      }
+      return this;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Direct-indexed child lookup for high fan-out nodes. Tokens are remapped onto a dense alphabet of the tokens that
+ * occur in the trie, and each qualifying node gets a row holding the index of its child for every alphabet slot, so a
+ * lookup is two array reads instead of a binary search. The rows only rely on each node's children being stored as one
+ * contiguous block, which holds for every node layout in this package. Only nodes among the first {@link #MAX_NODES}
+ * are considered: in breadth-first tries, as indexing builds, these are the shallow nodes that nearly every query
+ * passes through; in depth-first tries, as merging builds, they are the root and the first branches.
+ */
+class ChildTable {
+  /**
+   * Returned by {@link #find(int, char)} for nodes without a row; the caller falls back to searching the children.
+   */
+  static final int UNKNOWN = -2;
+  static final int MIN_CHILDREN = 16;
+  static final int MAX_NODES = 1 << 16;
+
+  private final char[] slots;
+  private final int[] offsets;
+  private final int[] rows;
+
+  private ChildTable(@Nonnull char[] slots, @Nonnull int[] offsets, @Nonnull int[] rows) {
+    this.slots = slots;
+    this.offsets = offsets;
+    this.rows = rows;
+  }
+
+  /**
+   * Builds rows for nodes with at least {@link #MIN_CHILDREN} children that cover a quarter or more of the alphabet,
+   * or returns null if no node qualifies.
+   */
+  @Nullable
+  static ChildTable build(@Nonnull NodeStore nodes) {
+    int nodeCount = nodes.length();
+    int limit = Math.min(nodeCount, MAX_NODES);
+    boolean candidates = false;
+    for (int i = 0; i < limit && !candidates; i++) {
+      candidates = nodes.getFirstChildIndex(i) >= 0 && nodes.getNumberOfChildren(i) >= MIN_CHILDREN;
+    }
+    if (!candidates)
+      return null;
+    boolean[] present = new boolean[Character.MAX_VALUE + 1];
+    for (int i = 1; i < nodeCount; i++) {
+      present[nodes.getToken(i)] = true;
+    }
+    char[] slots = new char[Character.MAX_VALUE + 1];
+    int alphabetSize = 0;
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      if (present[c]) {
+        if (alphabetSize == Character.MAX_VALUE)
+          return null;
+        slots[c] = (char) ++alphabetSize;
+      }
+    }
+    int[] offsets = new int[limit];
+    Arrays.fill(offsets, -1);
+    int rowCount = 0;
+    int lastRow = -1;
+    for (int i = 0; i < limit; i++) {
+      int numberOfChildren = nodes.getNumberOfChildren(i);
+      if (nodes.getFirstChildIndex(i) >= 0 && numberOfChildren >= MIN_CHILDREN
+          && numberOfChildren * 4 >= alphabetSize) {
+        offsets[i] = rowCount++ * alphabetSize;
+        lastRow = i;
+      }
+    }
+    if (0 == rowCount)
+      return null;
+    int[] rows = new int[rowCount * alphabetSize];
+    Arrays.fill(rows, -1);
+    for (int i = 0; i <= lastRow; i++) {
+      if (offsets[i] < 0)
+        continue;
+      int firstChild = nodes.getFirstChildIndex(i);
+      for (int j = 0; j < nodes.getNumberOfChildren(i); j++) {
+        rows[offsets[i] + slots[nodes.getToken(firstChild + j)] - 1] = firstChild + j;
+      }
+    }
+    return new ChildTable(slots, Arrays.copyOf(offsets, lastRow + 1), rows);
+  }
+
+  /**
+   * Returns the child of {@code node} with the given token, -1 if it has none, or {@link #UNKNOWN} if the node has no
+   * row.
+   */
+  int find(int node, char token) {
+    if (node >= offsets.length || offsets[node] < 0)
+      return UNKNOWN;
+    int slot = slots[token];
+    return 0 == slot ? -1 : rows[offsets[node] + slot - 1];
+  }
+
+  int getMemorySize() {
+    return slots.length * 2 + offsets.length * 4 + rows.length * 4;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.simiacryptus.text.NodewalkerCodec.END_OF_STRING;
+
+/**
+ * Precomputed autocomplete lists for a word trie: every node keeps the nodes of its {@code maxResults} most frequent
+ * complete entries (descendants, or itself, with an {@link NodewalkerCodec#END_OF_STRING} child), so a completion is a
+ * prefix traversal and an array read. Entries are ranked by the count of their END_OF_STRING child, ties going to
+ * the lower node index.
+ * <p>
+ * The lists are built bottom-up in one reverse scan over the node table, merging each node's children's lists, and
+ * stored back to back in a single array; a node's list holds at most as many entries as it has complete descendants,
+ * so a chain of single-word nodes costs one entry per node. The index is immutable and can be shared between
+ * threads, but it does not follow later changes to the trie.
+ */
+public class CompletionIndex {
+  private final CharTrie trie;
+  private final int maxResults;
+  private final int[] offsets;
+  private final int[] entries;
+
+  private CompletionIndex(@Nonnull CharTrie trie, int maxResults) {
+    if (!trie.hasUniqueParents())
+      throw new UnsupportedOperationException("Completion lists require a trie with unique parents");
+    this.trie = trie;
+    this.maxResults = maxResults;
+    NodeStore nodes = trie.nodes;
+    int nodeCount = nodes.length();
+    int[] sizes = new int[nodeCount];
+    int maxChildren = 0;
+    for (int node = nodeCount - 1; node >= 0; node--) {
+      long size = isTerminal(nodes, node) ? 1 : 0;
+      int firstChild = nodes.getFirstChildIndex(node);
+      int numberOfChildren = firstChild < 0 ? 0 : nodes.getNumberOfChildren(node);
+      for (int i = 0; i < numberOfChildren; i++) {
+        size += sizes[firstChild + i];
+      }
+      sizes[node] = (int) Math.min(size, maxResults);
+      maxChildren = Math.max(maxChildren, numberOfChildren);
+    }
+    offsets = new int[nodeCount + 1];
+    for (int node = 0; node < nodeCount; node++) {
+      long end = (long) offsets[node] + sizes[node];
+      if (end > Integer.MAX_VALUE - 8)
+        throw new IllegalArgumentException("Too many completion entries for " + maxResults + " results per node");
+      offsets[node + 1] = (int) end;
+    }
+    entries = new int[offsets[nodeCount]];
+    int[] heads = new int[maxChildren];
+    for (int node = nodeCount - 1; node >= 0; node--) {
+      merge(nodes, node, heads);
+    }
+  }
+
+  @Nonnull
+  public static CompletionIndex build(@Nonnull CharTrie trie, int maxResults) {
+    return new CompletionIndex(trie, maxResults);
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  public int getMemorySize() {
+    return (offsets.length + entries.length) * Integer.BYTES;
+  }
+
+  /**
+   * Returns up to {@code k} (and at most {@link #getMaxResults()}) of the most frequent complete entries starting with
+   * {@code prefix}, most frequent first.
+   */
+  @Nonnull
+  public List<TrieNode> complete(@Nonnull CharSequence prefix, int k) {
+    int node = 0;
+    for (int i = 0; i < prefix.length() && node >= 0; i++) {
+      node = trie.findChild(node, prefix.charAt(i));
+    }
+    if (node < 0)
+      return Collections.emptyList();
+    int from = offsets[node];
+    int to = Math.min(offsets[node + 1], from + Math.max(k, 0));
+    List<TrieNode> results = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      results.add(trie.getNode(entries[i]));
+    }
+    return results;
+  }
+
+  /**
+   * Fills the list of {@code node} from its own entry and the (already filled) lists of its children.
+   */
+  private void merge(@Nonnull NodeStore nodes, int node, @Nonnull int[] heads) {
+    int firstChild = nodes.getFirstChildIndex(node);
+    int numberOfChildren = firstChild < 0 ? 0 : nodes.getNumberOfChildren(node);
+    for (int i = 0; i < numberOfChildren; i++) {
+      heads[i] = offsets[firstChild + i];
+    }
+    boolean self = isTerminal(nodes, node);
+    for (int out = offsets[node]; out < offsets[node + 1]; out++) {
+      int best = self ? node : -1;
+      int bestChild = -1;
+      for (int i = 0; i < numberOfChildren; i++) {
+        if (heads[i] == offsets[firstChild + i + 1])
+          continue;
+        int candidate = entries[heads[i]];
+        if (best < 0 || ranksBefore(nodes, candidate, best)) {
+          best = candidate;
+          bestChild = i;
+        }
+      }
+      entries[out] = best;
+      if (bestChild < 0) {
+        self = false;
+      } else {
+        heads[bestChild]++;
+      }
+    }
+  }
+
+  private static boolean ranksBefore(@Nonnull NodeStore nodes, int a, int b) {
+    long countA = nodes.getCursorCount(nodes.getFirstChildIndex(a));
+    long countB = nodes.getCursorCount(nodes.getFirstChildIndex(b));
+    return countA != countB ? countA > countB : a < b;
+  }
+
+  /**
+   * END_OF_STRING sorts before every other token, so it can only be the first child.
+   */
+  private static boolean isTerminal(@Nonnull NodeStore nodes, int node) {
+    int firstChild = nodes.getFirstChildIndex(node);
+    return firstChild >= 0 && 0 < nodes.getNumberOfChildren(node) && END_OF_STRING == nodes.getToken(firstChild);
+  }
+}
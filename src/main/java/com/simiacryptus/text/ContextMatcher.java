@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Tracks, for a text read one char at a time, the deepest trie node matching a suffix of the text so far: the same node
+ * {@link CharTrie#matchEnd(String)} finds for each prefix. On a mismatch it follows godparent (suffix) links until a
+ * node can be extended, Aho-Corasick style, so a whole text is scanned in amortized constant time per char. The result
+ * is exact when every suffix of an indexed string is itself indexed, as in the tries built by {@link CharTrieIndex}.
+ */
+public class ContextMatcher {
+  private final CharTrie trie;
+  private int index = 0;
+  private int depth = 0;
+  private long position = 0;
+
+  ContextMatcher(@Nonnull CharTrie trie) {
+    if (!trie.hasUniqueParents())
+      throw new UnsupportedOperationException("Suffix links require a trie with unique parents");
+    this.trie = trie;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Length of the current match.
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * Number of chars read since construction or the last {@link #reset()}.
+   */
+  public long position() {
+    return position;
+  }
+
+  public long count() {
+    return trie.nodes.getCursorCount(index);
+  }
+
+  @Nonnull
+  public TrieNode toNode() {
+    return trie.getNode(index);
+  }
+
+  @Nonnull
+  public ContextMatcher reset() {
+    index = 0;
+    depth = 0;
+    position = 0;
+    return this;
+  }
+
+  /**
+   * Reads one char and moves to the deepest node matching a suffix of the text ending with it, or to the root if the
+   * char does not occur in the trie.
+   */
+  @Nonnull
+  public ContextMatcher accept(char token) {
+    position++;
+    while (true) {
+      int child = trie.findChild(index, token);
+      if (child >= 0) {
+        index = child;
+        depth++;
+        return this;
+      }
+      if (0 == index)
+        return this;
+      index = trie.godparentOf(index);
+      depth = 0 == index ? 0 : depth - 1;
+    }
+  }
+
+  /**
+   * Reads {@code text}, calling {@code visitor} with this matcher after each char.
+   */
+  public void scan(@Nonnull CharSequence text, @Nonnull Consumer<? super ContextMatcher> visitor) {
+    for (int i = 0; i < text.length(); i++) {
+      visitor.accept(accept(text.charAt(i)));
+    }
+  }
+
+  /**
+   * Reads {@code reader} to its end, calling {@code visitor} with this matcher after each char.
+   */
+  public void scan(@Nonnull Reader reader, @Nonnull Consumer<? super ContextMatcher> visitor) {
+    char[] buffer = new char[8192];
+    try {
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        for (int i = 0; i < read; i++) {
+          visitor.accept(accept(buffer[i]));
+        }
+      }
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+}
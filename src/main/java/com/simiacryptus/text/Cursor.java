@@ -45,13 +45,11 @@ public class Cursor {
   }
 
   public char getToken() {
-    int index = getPosition();
-    CharSequence document = getDocument();
-    return index >= document.length() ? NodewalkerCodec.END_OF_STRING : document.charAt(index);
+    return this.charTrieIndex.documents.charAt(data.documentId, getPosition());
   }
 
   public boolean hasNext() {
-    return getPosition() + 1 < getDocument().length();
+    return getPosition() + 1 < this.charTrieIndex.documents.length(data.documentId);
   }
 
   @Nonnull
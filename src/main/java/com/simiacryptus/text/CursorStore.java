@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Cursor table for a {@link CharTrieIndex}. Cursors are addressed by index and can be read and reordered without
+ * materializing {@link CursorData} objects.
+ */
+interface CursorStore {
+
+  static boolean equals(@Nonnull CursorStore a, @Nonnull CursorStore b) {
+    int length = a.length();
+    if (length != b.length())
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (a.getDocumentId(i) != b.getDocumentId(i))
+        return false;
+      if (a.getPosition(i) != b.getPosition(i))
+        return false;
+    }
+    return true;
+  }
+
+  static int hashCode(@Nonnull CursorStore store) {
+    int length = store.length();
+    int result = length;
+    for (int i = 0; i < length; i++) {
+      result = 31 * result + store.getDocumentId(i);
+      result = 31 * result + store.getPosition(i);
+    }
+    return result;
+  }
+
+  int getMemorySize();
+
+  int length();
+
+  int getDocumentId(int index);
+
+  int getPosition(int index);
+
+  /**
+   * Same as {@link #getPosition(int)} for a caller that has already resolved the cursor's document id.
+   */
+  int getPosition(int index, int documentId);
+
+  /**
+   * Offset of the cursor in the packed corpus of a {@link DocumentStore}.
+   */
+  long getCorpusOffset(int index, @Nonnull DocumentStore documents);
+
+  /**
+   * Opaque encoding of one cursor, used to move cursors around without decoding them.
+   */
+  long getEntry(int index);
+
+  /**
+   * Overwrites the range starting at {@code index} with the first {@code count} of the given {@link #getEntry(int)}
+   * values.
+   */
+  void putEntries(int index, @Nonnull long[] entries, int count);
+
+  @Nonnull
+  default CursorData get(int index) {
+    return new CursorData(getDocumentId(index), getPosition(index));
+  }
+
+  void set(int index, int documentId, int position);
+
+  int add(int documentId, int position);
+
+  /**
+   * Adds cursors for a document that has already been added to the index's {@link DocumentStore}.
+   */
+  int addAll(int documentId, @Nonnull int[] positions);
+
+  /**
+   * @param documents the document store of the index the copy will belong to
+   */
+  @Nonnull
+  CursorStore copy(@Nonnull DocumentStore documents);
+}
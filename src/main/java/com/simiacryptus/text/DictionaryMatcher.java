@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Reader;
+
+import static com.simiacryptus.text.NodewalkerCodec.END_OF_STRING;
+
+/**
+ * An Aho-Corasick automaton over a word trie such as {@link CharTrieIndex#indexWords} builds, reporting every
+ * occurrence of every dictionary word in a single pass over a text. A word is a path from the root to a node with an
+ * {@link NodewalkerCodec#END_OF_STRING} child.
+ * <p>
+ * Failure links are computed breadth-first by the same rule as godparents, except that a missing continuation keeps
+ * following the parent's failure chain instead of dropping to the root: a word trie only holds prefixes, so the
+ * godparent of a node is not always its longest suffix in the trie. In a full-text trie the two coincide. Each node
+ * also records the nearest word on its failure chain, so hits are enumerated without visiting non-word nodes. The
+ * compiled automaton is immutable and can be shared between threads.
+ */
+public class DictionaryMatcher {
+  private final CharTrie trie;
+  private final int[] failure;
+  private final int[] output;
+  private final int[] depth;
+
+  private DictionaryMatcher(@Nonnull CharTrie trie) {
+    if (!trie.hasUniqueParents())
+      throw new UnsupportedOperationException("Failure links require a trie with unique parents");
+    this.trie = trie;
+    NodeStore nodes = trie.nodes;
+    int nodeCount = nodes.length();
+    failure = new int[nodeCount];
+    output = new int[nodeCount];
+    depth = new int[nodeCount];
+    int[] order = new int[nodeCount];
+    output[0] = -1;
+    int size = 1;
+    for (int i = 0; i < size; i++) {
+      int node = order[i];
+      int firstChild = nodes.getFirstChildIndex(node);
+      for (int j = 0; firstChild >= 0 && j < nodes.getNumberOfChildren(node); j++) {
+        int child = firstChild + j;
+        char token = nodes.getToken(child);
+        depth[child] = depth[node] + 1;
+        if (END_OF_STRING == token) {
+          failure[child] = 0;
+          output[child] = -1;
+          continue;
+        }
+        failure[child] = 0 == node ? 0 : transition(failure[node], token);
+        output[child] = -1;
+        order[size++] = child;
+      }
+      if (0 != node) {
+        output[node] = trie.findChild(node, END_OF_STRING) >= 0 ? node : output[failure[node]];
+      }
+    }
+  }
+
+  @Nonnull
+  public static DictionaryMatcher compile(@Nonnull CharTrie trie) {
+    return new DictionaryMatcher(trie);
+  }
+
+  /**
+   * Receives dictionary hits; {@code start} and {@code end} are offsets into the scanned text (end exclusive) and
+   * {@code node} is the trie node of the word, see {@link #getNode(int)}.
+   */
+  @FunctionalInterface
+  public interface HitHandler {
+    void hit(long start, long end, int node);
+  }
+
+  @Nonnull
+  public TrieNode getNode(int node) {
+    return trie.getNode(node);
+  }
+
+  public int getLength(int node) {
+    return depth[node];
+  }
+
+  /**
+   * Reports every occurrence of every dictionary word in {@code text}, in order of their end offsets.
+   */
+  public void scan(@Nonnull CharSequence text, @Nonnull HitHandler handler) {
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      state = step(state, text.charAt(i), i + 1, handler);
+    }
+  }
+
+  /**
+   * Reads {@code reader} to its end, reporting every occurrence of every dictionary word.
+   */
+  public void scan(@Nonnull Reader reader, @Nonnull HitHandler handler) {
+    char[] buffer = new char[8192];
+    long position = 0;
+    int state = 0;
+    try {
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        for (int i = 0; i < read; i++) {
+          state = step(state, buffer[i], ++position, handler);
+        }
+      }
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+
+  private int step(int state, char token, long end, @Nonnull HitHandler handler) {
+    state = transition(state, token);
+    for (int word = output[state]; word > 0; word = output[failure[word]]) {
+      handler.hit(end - depth[word], end, word);
+    }
+    return state;
+  }
+
+  private int transition(int state, char token) {
+    if (END_OF_STRING == token)
+      return 0;
+    while (true) {
+      int child = trie.findChild(state, token);
+      if (child >= 0)
+        return child;
+      if (0 == state)
+        return 0;
+      state = failure[state];
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Document text for a {@link CharTrieIndex}, packed into one {@code char[]} instead of one object per document. Each
+ * document is followed by an {@link NodewalkerCodec#END_OF_STRING} slot, so that offsets match
+ * {@link PackedCursorStore} and the token at any cursor position, including the end, is a single array read.
+ */
+class DocumentStore {
+  private char[] text;
+  private int[] starts;
+  private int size = 0;
+  private int used = 0;
+
+  public DocumentStore(int capacity) {
+    this.text = new char[Math.max(capacity, 16)];
+    this.starts = new int[16];
+  }
+
+  protected DocumentStore(@Nonnull DocumentStore copyFrom) {
+    synchronized (copyFrom) {
+      this.text = Arrays.copyOf(copyFrom.text, Math.max(copyFrom.used, 16));
+      this.starts = Arrays.copyOf(copyFrom.starts, Math.max(copyFrom.size + 1, 16));
+      this.size = copyFrom.size;
+      this.used = copyFrom.used;
+    }
+  }
+
+  public int getMemorySize() {
+    return text.length * 2 + starts.length * 4;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return 0 == size;
+  }
+
+  /**
+   * Total document characters, excluding terminators.
+   */
+  public long getTextLength() {
+    return used - size;
+  }
+
+  /**
+   * Length of the packed corpus, including one terminator slot per document.
+   */
+  public long getCorpusLength() {
+    return used;
+  }
+
+  public synchronized int add(@Nonnull CharSequence document) {
+    int length = document.length();
+    if ((long) used + length + 1 > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Document store full");
+    }
+    if (text.length < used + length + 1) {
+      long capacity = Math.max((long) text.length * 2, used + length + 1);
+      text = Arrays.copyOf(text, (int) Math.min(Integer.MAX_VALUE - 8, capacity));
+    }
+    if (starts.length < size + 2) {
+      starts = Arrays.copyOf(starts, starts.length * 2);
+    }
+    int start = used;
+    for (int i = 0; i < length; i++) {
+      text[start + i] = document.charAt(i);
+    }
+    text[start + length] = NodewalkerCodec.END_OF_STRING;
+    used = start + length + 1;
+    starts[size] = start;
+    starts[size + 1] = used;
+    return size++;
+  }
+
+  public int length(int documentId) {
+    return starts[documentId + 1] - starts[documentId] - 1;
+  }
+
+  public long getStart(int documentId) {
+    return starts[documentId];
+  }
+
+  /**
+   * Returns the character at {@code position} in the document, or {@link NodewalkerCodec#END_OF_STRING} past its end.
+   */
+  public char charAt(int documentId, int position) {
+    int start = starts[documentId];
+    return position < starts[documentId + 1] - start ? text[start + position] : NodewalkerCodec.END_OF_STRING;
+  }
+
+  /**
+   * Returns the character at a corpus offset; terminator slots read as {@link NodewalkerCodec#END_OF_STRING}.
+   */
+  public char getChar(long offset) {
+    return text[(int) offset];
+  }
+
+  public int getDocumentAt(long offset) {
+    int documentId = Arrays.binarySearch(starts, 0, size, (int) offset);
+    return documentId < 0 ? -documentId - 2 : documentId;
+  }
+
+  @Nonnull
+  public String get(int documentId) {
+    return new String(text, starts[documentId], length(documentId));
+  }
+
+  @Nonnull
+  public DocumentStore copy() {
+    return new DocumentStore(this);
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Builds a truncated index for corpora that do not fit in memory. Document text is spooled to a temporary file and
+ * memory-mapped, and cursors are kept in a second file as 8-byte corpus offsets. Only the nodes stay on the heap.
+ * <p>
+ * The levels are built as by {@link IndexBuilder}, so the result is the same trie: each level sweeps the cursor file
+ * once, loading runs of adjacent nodes that fit the memory budget, splitting them in memory and writing them back.
+ * Nodes too large for the budget are partitioned chunk by chunk into a scratch file, each child's cursors landing in
+ * their own region, and copied back.
+ */
+public class ExternalIndexBuilder {
+  private static final int CURSOR_SIZE = 8;
+  private static final int BYTES_PER_WINDOW_CURSOR = 2 * CURSOR_SIZE + 2;
+
+  private int maxLevels = Integer.MAX_VALUE;
+  private int minWeight = 0;
+  private long memoryBudget = 256L * 1024 * 1024;
+  @Nullable
+  private File tempDirectory = null;
+  @Nonnull
+  private Function<CharSequence, IntStream> cursorSeeds = CharTrieIndex.getCursorInit(false);
+  @Nullable
+  private PrintStream verbose = null;
+
+  public int getMaxLevels() {
+    return maxLevels;
+  }
+
+  @Nonnull
+  public ExternalIndexBuilder setMaxLevels(int maxLevels) {
+    this.maxLevels = maxLevels;
+    return this;
+  }
+
+  public int getMinWeight() {
+    return minWeight;
+  }
+
+  @Nonnull
+  public ExternalIndexBuilder setMinWeight(int minWeight) {
+    this.minWeight = minWeight;
+    return this;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Bytes of cursor data to hold in memory at once, in addition to the node table.
+   */
+  @Nonnull
+  public ExternalIndexBuilder setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    return this;
+  }
+
+  @Nullable
+  public File getTempDirectory() {
+    return tempDirectory;
+  }
+
+  @Nonnull
+  public ExternalIndexBuilder setTempDirectory(@Nullable File tempDirectory) {
+    this.tempDirectory = tempDirectory;
+    return this;
+  }
+
+  @Nonnull
+  public Function<CharSequence, IntStream> getCursorSeeds() {
+    return cursorSeeds;
+  }
+
+  /**
+   * Cursor start positions per document; see {@link CharTrieIndex#getCursorInit(boolean)}. Defaults to full text.
+   */
+  @Nonnull
+  public ExternalIndexBuilder setCursorSeeds(@Nonnull Function<CharSequence, IntStream> cursorSeeds) {
+    this.cursorSeeds = cursorSeeds;
+    return this;
+  }
+
+  @Nullable
+  public PrintStream getVerbose() {
+    return verbose;
+  }
+
+  @Nonnull
+  public ExternalIndexBuilder setVerbose(@Nullable PrintStream verbose) {
+    this.verbose = verbose;
+    return this;
+  }
+
+  @Nonnull
+  public CharTrie build(@Nonnull Stream<? extends CharSequence> documents) {
+    File corpusFile = null;
+    File cursorFile = null;
+    File scratchFile = null;
+    try {
+      corpusFile = File.createTempFile("corpus", ".tmp", tempDirectory);
+      cursorFile = File.createTempFile("cursors", ".tmp", tempDirectory);
+      scratchFile = File.createTempFile("scratch", ".tmp", tempDirectory);
+      try (FileChannel corpusChannel = FileChannel.open(corpusFile.toPath(), READ, WRITE);
+           FileChannel cursors = FileChannel.open(cursorFile.toPath(), READ, WRITE);
+           FileChannel scratch = FileChannel.open(scratchFile.toPath(), READ, WRITE)) {
+        long cursorCount = spool(documents.iterator(), corpusChannel, cursors);
+        return new Build(cursorCount).index(new MappedCorpus(corpusChannel), cursors, scratch, cursorCount);
+      }
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    } finally {
+      delete(corpusFile);
+      delete(cursorFile);
+      delete(scratchFile);
+    }
+  }
+
+  private long spool(@Nonnull Iterator<? extends CharSequence> documents, @Nonnull FileChannel corpus,
+                     @Nonnull FileChannel cursors) throws IOException {
+    ByteBuffer text = ByteBuffer.allocateDirect(1024 * 1024);
+    ByteBuffer offsets = ByteBuffer.allocateDirect(1024 * 1024);
+    long corpusLength = 0;
+    long cursorCount = 0;
+    while (documents.hasNext()) {
+      CharSequence document = documents.next();
+      for (int i = 0; i <= document.length(); i++) {
+        if (text.remaining() < 2)
+          flush(corpus, text);
+        text.putChar(i < document.length() ? document.charAt(i) : NodewalkerCodec.END_OF_STRING);
+      }
+      PrimitiveIterator.OfInt seeds = cursorSeeds.apply(document).iterator();
+      while (seeds.hasNext()) {
+        if (offsets.remaining() < CURSOR_SIZE)
+          flush(cursors, offsets);
+        offsets.putLong(corpusLength + seeds.nextInt());
+        cursorCount++;
+      }
+      corpusLength += document.length() + 1;
+    }
+    flush(corpus, text);
+    flush(cursors, offsets);
+    return cursorCount;
+  }
+
+  private static void attach(@Nonnull CharTrie trie, int node, int firstChild, int numberOfChildren) {
+    trie.ensureParentIndexCapacity(firstChild, numberOfChildren, node);
+    trie.nodes.setFirstChildIndex(node, firstChild);
+    trie.nodes.setNumberOfChildren(node, (short) numberOfChildren);
+  }
+
+  private static void flush(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static void delete(@Nullable File file) {
+    if (null != file && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Scratch buffers and level sweeps for a single {@link #build(Stream)} call, so that builds do not share state.
+   */
+  private class Build {
+    private final long[] entries;
+    private final long[] sorted;
+    private final char[] tokens;
+    private final char[] keys = new char[Character.MAX_VALUE + 1];
+    private final int[] counts = new int[Character.MAX_VALUE + 1];
+    private final ByteBuffer io = ByteBuffer.allocateDirect(1024 * 1024);
+
+    Build(long cursorCount) {
+      int windowSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBudget / BYTES_PER_WINDOW_CURSOR));
+      entries = new long[(int) Math.min(windowSize, Math.max(cursorCount, 1))];
+      sorted = new long[entries.length];
+      tokens = new char[entries.length];
+    }
+
+    @Nonnull
+    private CharTrie index(@Nonnull MappedCorpus corpus, @Nonnull FileChannel cursors, @Nonnull FileChannel scratch,
+                           long cursorCount) throws IOException {
+      CharTrie trie = new CharTrie(new NodeStore(1024));
+      NodeStore nodes = trie.nodes;
+      nodes.add(NodewalkerCodec.END_OF_STRING, (short) -1, -1, cursorCount, 0);
+      int[] frontier = {0};
+      int frontierSize = 1;
+      for (short level = 0; frontierSize > 0; level++) {
+        int[] next = new int[Math.max(16, frontierSize)];
+        int nextSize = 0;
+        int splits = 0;
+        int i = 0;
+        while (i < frontierSize) {
+          if (0 < level && !IndexBuilder.isSplittable(trie, frontier[i], level, maxLevels, minWeight)) {
+            i++;
+            continue;
+          }
+          int from = i;
+          long firstCursor = nodes.getFirstCursorIndex(frontier[i]);
+          long windowEnd = firstCursor + nodes.getCursorCount(frontier[i]);
+          for (i++; i < frontierSize; i++) {
+            int node = frontier[i];
+            if (nodes.getFirstCursorIndex(node) != windowEnd
+                || windowEnd + nodes.getCursorCount(node) - firstCursor > entries.length)
+              break;
+            if (!IndexBuilder.isSplittable(trie, node, level, maxLevels, minWeight))
+              break;
+            windowEnd += nodes.getCursorCount(node);
+          }
+          if (windowEnd - firstCursor > entries.length) {
+            splitExternal(trie, frontier[from], level, corpus, cursors, scratch);
+          } else {
+            int count = (int) (windowEnd - firstCursor);
+            read(cursors, firstCursor, entries, count);
+            for (int j = from; j < i; j++) {
+              int node = frontier[j];
+              split(trie, node, level, corpus, (int) (nodes.getFirstCursorIndex(node) - firstCursor));
+            }
+            write(cursors, firstCursor, entries, count);
+          }
+          for (int j = from; j < i; j++) {
+            int node = frontier[j];
+            splits++;
+            int firstChild = nodes.getFirstChildIndex(node);
+            int numberOfChildren = nodes.getNumberOfChildren(node);
+            if (next.length < nextSize + numberOfChildren) {
+              next = Arrays.copyOf(next, Math.max(next.length * 2, nextSize + numberOfChildren));
+            }
+            for (int k = 0; k < numberOfChildren; k++) {
+              next[nextSize++] = firstChild + k;
+            }
+          }
+        }
+        if (0 == splits)
+          break;
+        if (null != verbose) {
+          verbose.println(String.format("Level %s: split %s of %s nodes", level, splits, frontierSize));
+        }
+        frontier = next;
+        frontierSize = nextSize;
+      }
+      return trie.indexGodparents();
+    }
+
+    /**
+     * Splits a node whose cursors are loaded in {@link #entries} at {@code offset}, by stable counting sort.
+     */
+    private void split(@Nonnull CharTrie trie, int node, short depth, @Nonnull MappedCorpus corpus, int offset) {
+      NodeStore nodes = trie.nodes;
+      int cursorCount = (int) nodes.getCursorCount(node);
+      long firstCursor = nodes.getFirstCursorIndex(node);
+      int numberOfChildren = 0;
+      for (int i = 0; i < cursorCount; i++) {
+        char token = corpus.charAt(entries[offset + i] + depth);
+        tokens[i] = token;
+        if (0 == counts[token]++) {
+          keys[numberOfChildren++] = token;
+        }
+      }
+      Arrays.sort(keys, 0, numberOfChildren);
+      int firstChild = nodes.length();
+      int position = 0;
+      for (int i = 0; i < numberOfChildren; i++) {
+        char token = keys[i];
+        int count = counts[token];
+        nodes.add(token, (short) -1, -1, count, firstCursor + position);
+        counts[token] = position;
+        position += count;
+      }
+      for (int i = 0; i < cursorCount; i++) {
+        sorted[counts[tokens[i]]++] = entries[offset + i];
+      }
+      System.arraycopy(sorted, 0, entries, offset, cursorCount);
+      for (int i = 0; i < numberOfChildren; i++) {
+        counts[keys[i]] = 0;
+      }
+      attach(trie, node, firstChild, numberOfChildren);
+    }
+
+    /**
+     * Splits a node larger than the memory budget: one pass over its cursors counts the children, a second sorts each
+     * chunk in memory and writes every child's run to that child's region of the scratch file, which is then copied
+     * back over the node's range.
+     */
+    private void splitExternal(@Nonnull CharTrie trie, int node, short depth, @Nonnull MappedCorpus corpus,
+                               @Nonnull FileChannel cursors, @Nonnull FileChannel scratch) throws IOException {
+      NodeStore nodes = trie.nodes;
+      long firstCursor = nodes.getFirstCursorIndex(node);
+      long cursorCount = nodes.getCursorCount(node);
+      long[] childCounts = new long[Character.MAX_VALUE + 1];
+      for (long chunk = 0; chunk < cursorCount; chunk += entries.length) {
+        int count = (int) Math.min(entries.length, cursorCount - chunk);
+        read(cursors, firstCursor + chunk, entries, count);
+        for (int i = 0; i < count; i++) {
+          childCounts[corpus.charAt(entries[i] + depth)]++;
+        }
+      }
+      long[] childPositions = new long[Character.MAX_VALUE + 1];
+      int firstChild = nodes.length();
+      int numberOfChildren = 0;
+      long position = 0;
+      for (int token = 0; token <= Character.MAX_VALUE; token++) {
+        if (0 < childCounts[token]) {
+          nodes.add((char) token, (short) -1, -1, childCounts[token], firstCursor + position);
+          childPositions[token] = position;
+          position += childCounts[token];
+          numberOfChildren++;
+        }
+      }
+      for (long chunk = 0; chunk < cursorCount; chunk += entries.length) {
+        int count = (int) Math.min(entries.length, cursorCount - chunk);
+        read(cursors, firstCursor + chunk, entries, count);
+        int chunkChildren = 0;
+        for (int i = 0; i < count; i++) {
+          char token = corpus.charAt(entries[i] + depth);
+          tokens[i] = token;
+          if (0 == counts[token]++) {
+            keys[chunkChildren++] = token;
+          }
+        }
+        Arrays.sort(keys, 0, chunkChildren);
+        int offset = 0;
+        for (int i = 0; i < chunkChildren; i++) {
+          char token = keys[i];
+          int tokenCount = counts[token];
+          counts[token] = offset;
+          offset += tokenCount;
+        }
+        for (int i = 0; i < count; i++) {
+          sorted[counts[tokens[i]]++] = entries[i];
+        }
+        offset = 0;
+        for (int i = 0; i < chunkChildren; i++) {
+          char token = keys[i];
+          int tokenCount = counts[token] - offset;
+          write(scratch, childPositions[token], sorted, offset, tokenCount);
+          childPositions[token] += tokenCount;
+          offset = counts[token];
+          counts[token] = 0;
+        }
+      }
+      for (long chunk = 0; chunk < cursorCount; chunk += entries.length) {
+        int count = (int) Math.min(entries.length, cursorCount - chunk);
+        read(scratch, chunk, entries, count);
+        write(cursors, firstCursor + chunk, entries, count);
+      }
+      attach(trie, node, firstChild, numberOfChildren);
+    }
+
+    private void read(@Nonnull FileChannel channel, long first, @Nonnull long[] values, int count) throws IOException {
+      for (int done = 0; done < count; ) {
+        int n = Math.min(count - done, io.capacity() / CURSOR_SIZE);
+        io.clear();
+        io.limit(n * CURSOR_SIZE);
+        long position = (first + done) * CURSOR_SIZE;
+        while (io.hasRemaining()) {
+          if (channel.read(io, position + io.position()) < 0)
+            throw new EOFException();
+        }
+        io.flip();
+        io.asLongBuffer().get(values, done, n);
+        done += n;
+      }
+    }
+
+    private void write(@Nonnull FileChannel channel, long first, @Nonnull long[] values, int count) throws IOException {
+      write(channel, first, values, 0, count);
+    }
+
+    private void write(@Nonnull FileChannel channel, long first, @Nonnull long[] values, int offset, int count)
+        throws IOException {
+      for (int done = 0; done < count; ) {
+        int n = Math.min(count - done, io.capacity() / CURSOR_SIZE);
+        io.clear();
+        io.asLongBuffer().put(values, offset + done, n);
+        io.limit(n * CURSOR_SIZE);
+        long position = (first + done) * CURSOR_SIZE;
+        while (io.hasRemaining()) {
+          channel.write(io, position + io.position());
+        }
+        done += n;
+      }
+    }
+  }
+
+  /**
+   * The spooled document text, mapped in 1 GB segments and addressed by 64-bit character offset.
+   */
+  private static class MappedCorpus {
+    private static final int SEGMENT_BITS = 29;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private final ByteBuffer[] segments;
+
+    MappedCorpus(@Nonnull FileChannel channel) throws IOException {
+      long length = channel.size() / 2;
+      int segmentCount = (int) Math.max(1, (length + SEGMENT_MASK) >>> SEGMENT_BITS);
+      segments = new ByteBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long first = (long) i << SEGMENT_BITS;
+        long size = Math.max(0, Math.min(1L << SEGMENT_BITS, length - first));
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * 2, size * 2);
+      }
+    }
+
+    char charAt(long offset) {
+      return segments[(int) (offset >>> SEGMENT_BITS)].getChar((int) (offset & SEGMENT_MASK) << 1);
+    }
+  }
+}
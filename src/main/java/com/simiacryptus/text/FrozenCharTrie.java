@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An immutable {@link CharTrie} for concurrent serving. The parent, godparent and depth of every node are computed
+ * once, breadth-first (see {@link #indexGodparents()}), when the trie is frozen, so queries never populate caches or
+ * take locks; all writes are rejected. {@link #copy()} returns an ordinary, mutable trie.
+ */
+public class FrozenCharTrie extends CharTrie {
+
+  FrozenCharTrie(@Nonnull CharTrie trie) {
+    super(trie.nodes.freeze());
+    int nodeCount = getNodeCount();
+    int[] parents = new int[nodeCount];
+    int[] godparents = new int[nodeCount];
+    short[] depths = new short[nodeCount];
+    indexLevels(parents, godparents, depths);
+    this.parentIndex = parents;
+    this.godparentIndex = godparents;
+    this.depthIndex = depths;
+    this.childTable = ChildTable.build(nodes);
+  }
+
+  @Nonnull
+  @Override
+  public FrozenCharTrie freeze() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  public FrozenCharTrie indexGodparents() {
+    return this;
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return true;
+  }
+
+  @Nonnull
+  @Override
+  CharTrie view() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  CharTrie writable() {
+    return copy();
+  }
+
+  @Override
+  void setGodparentIndex(int index, int godparent) {
+  }
+
+  @Override
+  void ensureParentIndexCapacity(int start, int length, int parentId) {
+    throw new UnsupportedOperationException("Frozen trie");
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.simiacryptus.text.NodewalkerCodec.*;
+
+/**
+ * Finds the complete entries of a trie (paths followed by {@link NodewalkerCodec#END_OF_STRING}) within a given
+ * Damerau-Levenshtein distance of a query, counting adjacent transpositions as one edit. The trie is walked depth
+ * first while one row of the edit-distance table is computed per node, which amounts to running a Levenshtein
+ * automaton in lockstep with the trie; a subtree is abandoned as soon as its row's minimum exceeds the edit budget.
+ */
+class FuzzyMatcher {
+  private final CharTrie trie;
+  private final char[] query;
+  private final int maxEdits;
+  private final int[][] rows;
+  private final char[] path;
+  private final List<Candidate> candidates = new ArrayList<>();
+
+  FuzzyMatcher(@Nonnull CharTrie trie, @Nonnull CharSequence query, int maxEdits) {
+    this.trie = trie;
+    this.query = query.toString().toCharArray();
+    this.maxEdits = maxEdits;
+    int maxDepth = this.query.length + maxEdits;
+    this.rows = new int[maxDepth + 1][this.query.length + 1];
+    this.path = new char[maxDepth];
+    for (int j = 0; j <= this.query.length; j++) {
+      rows[0][j] = j;
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} entries, closest first and then by descending number of occurrences as a complete
+   * entry.
+   */
+  @Nonnull
+  List<TrieNode> match(int limit) {
+    visit(0, 0);
+    return candidates.stream()
+        .sorted(Comparator.comparingInt((Candidate c) -> c.distance).thenComparingLong(c -> -c.count))
+        .limit(limit).map(this::toNode).collect(Collectors.toList());
+  }
+
+  @Nonnull
+  private TrieNode toNode(@Nonnull Candidate candidate) {
+    return null == candidate.text ? trie.getNode(candidate.node) : trie.root().traverse(candidate.text);
+  }
+
+  private void visit(int node, int depth) {
+    NodeStore nodes = trie.nodes;
+    int firstChild = nodes.getFirstChildIndex(node);
+    int numberOfChildren = firstChild < 0 ? 0 : nodes.getNumberOfChildren(node);
+    // END_OF_STRING sorts before every other token, so a terminal is always the first child
+    boolean terminal = 0 < numberOfChildren && END_OF_STRING == nodes.getToken(firstChild);
+    int distance = rows[depth][query.length];
+    if (terminal && distance <= maxEdits) {
+      // Nodes shared between several paths (see MinimizedCharTrie) can only be rebuilt from their text
+      String text = trie.hasUniqueParents() ? null : new String(path, 0, depth);
+      candidates.add(new Candidate(node, text, distance, nodes.getCursorCount(firstChild)));
+    }
+    if (depth == path.length)
+      return;
+    for (int child = terminal ? firstChild + 1 : firstChild; child < firstChild + numberOfChildren; child++) {
+      char token = nodes.getToken(child);
+      if (FALLBACK == token || ESCAPE == token)
+        continue;
+      path[depth] = token;
+      if (fillRow(depth + 1, token) <= maxEdits) {
+        visit(child, depth + 1);
+      }
+    }
+  }
+
+  /**
+   * Computes the table row for the path extended by {@code token}, returning its minimum. Only the diagonal band of
+   * cells that can still be within the edit budget is evaluated; the cells bordering it are set to {@code maxEdits + 1}
+   * so that the next row, and the final distance check, never read values left over from another branch.
+   */
+  private int fillRow(int depth, char token) {
+    int[] previous = rows[depth - 1];
+    int[] row = rows[depth];
+    int outside = maxEdits + 1;
+    int from = Math.max(1, depth - maxEdits);
+    int to = Math.min(query.length, depth + maxEdits);
+    row[from - 1] = 1 == from ? depth : outside;
+    int min = row[from - 1];
+    for (int j = from; j <= to; j++) {
+      char expected = query[j - 1];
+      int cost = expected == token ? 0 : 1;
+      int value = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+      if (depth > 1 && j > 1 && token == query[j - 2] && path[depth - 2] == expected) {
+        value = Math.min(value, rows[depth - 2][j - 2] + 1);
+      }
+      row[j] = value;
+      min = Math.min(min, value);
+    }
+    if (to < query.length) {
+      row[to + 1] = outside;
+      row[query.length] = outside;
+    }
+    return min;
+  }
+
+  private static class Candidate {
+    final int node;
+    @Nullable
+    final String text;
+    final int distance;
+    final long count;
+
+    Candidate(int node, @Nullable String text, int distance, long count) {
+      this.node = node;
+      this.text = text;
+      this.distance = distance;
+      this.count = count;
+    }
+  }
+}
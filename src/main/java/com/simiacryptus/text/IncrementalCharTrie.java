@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A trie that keeps accepting documents after it has been indexed. New documents are buffered and indexed into small
+ * delta tries; queries sum the base trie and all deltas on the fly, and once too many deltas accumulate they are folded
+ * into the base with {@link CharTrie#merge(List)} on a background executor.
+ * <p>
+ * Deltas are indexed to {@code maxLevels} without a minimum weight, since a small delta cannot tell which of its
+ * branches will end up rare; the minimum weight is only applied by the base index.
+ */
+public class IncrementalCharTrie {
+  private final int maxLevels;
+  private final AtomicBoolean compacting = new AtomicBoolean(false);
+  private final Object compactionLock = new Object();
+  private final List<CharSequence> pending = new ArrayList<>();
+  private volatile Generation generation;
+  private long pendingSize = 0;
+  private long deltaSize = 1024 * 1024;
+  private int maxDeltas = 8;
+  @Nullable
+  private Executor compactor = ForkJoinPool.commonPool();
+
+  public IncrementalCharTrie(@Nonnull CharTrie base, int maxLevels) {
+    this.maxLevels = maxLevels;
+    this.generation = new Generation(base, Collections.emptyList());
+  }
+
+  public long getDeltaSize() {
+    return deltaSize;
+  }
+
+  /**
+   * Characters buffered before the pending documents are indexed into a new delta.
+   */
+  @Nonnull
+  public IncrementalCharTrie setDeltaSize(long deltaSize) {
+    this.deltaSize = deltaSize;
+    return this;
+  }
+
+  public int getMaxDeltas() {
+    return maxDeltas;
+  }
+
+  @Nonnull
+  public IncrementalCharTrie setMaxDeltas(int maxDeltas) {
+    this.maxDeltas = maxDeltas;
+    return this;
+  }
+
+  @Nullable
+  public Executor getCompactor() {
+    return compactor;
+  }
+
+  /**
+   * Executor for background compaction; if null, deltas are only folded in by explicit calls to {@link #compact()}.
+   */
+  @Nonnull
+  public IncrementalCharTrie setCompactor(@Nullable Executor compactor) {
+    this.compactor = compactor;
+    return this;
+  }
+
+  @Nonnull
+  public CharTrie getBase() {
+    return generation.base;
+  }
+
+  public int getDeltaCount() {
+    return generation.deltas.size();
+  }
+
+  public void addDocument(@Nonnull CharSequence document) {
+    List<CharSequence> documents = null;
+    synchronized (pending) {
+      pending.add(document);
+      pendingSize += document.length() + 1;
+      if (pendingSize >= deltaSize) {
+        documents = drainPending();
+      }
+    }
+    if (null != documents) {
+      addDelta(documents);
+    }
+  }
+
+  /**
+   * Indexes all buffered documents into a delta, making them visible to queries.
+   */
+  @Nonnull
+  public IncrementalCharTrie flush() {
+    List<CharSequence> documents;
+    synchronized (pending) {
+      documents = drainPending();
+    }
+    if (!documents.isEmpty()) {
+      addDelta(documents);
+    }
+    return this;
+  }
+
+  /**
+   * Folds all current deltas into the base trie. Deltas added meanwhile are kept. Compactions are serialized, so that
+   * only appends to the delta list can happen between taking the snapshot and installing the merged base.
+   */
+  @Nonnull
+  public IncrementalCharTrie compact() {
+    synchronized (compactionLock) {
+      Generation snapshot = generation;
+      if (snapshot.deltas.isEmpty())
+        return this;
+      List<CharTrie> tries = new ArrayList<>(snapshot.deltas.size() + 1);
+      tries.add(snapshot.base);
+      tries.addAll(snapshot.deltas);
+      CharTrie base = CharTrie.merge(tries);
+      synchronized (this) {
+        List<CharTrie> deltas = generation.deltas;
+        assert generation.base == snapshot.base;
+        generation = new Generation(base, new ArrayList<>(deltas.subList(snapshot.deltas.size(), deltas.size())));
+      }
+      return this;
+    }
+  }
+
+  /**
+   * Number of indexed occurrences of {@code text} across the base and all deltas; 0 if it is not a path in any of them.
+   */
+  public long getCursorCount(@Nonnull CharSequence text) {
+    long count = 0;
+    for (CharTrie trie : generation.tries()) {
+      NodeCursor cursor = trie.cursor();
+      if (text.length() == cursor.traverse(text, 0, text.length())) {
+        count += cursor.count();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Summed counts of the tokens following {@code text} across the base and all deltas.
+   */
+  @Nonnull
+  public TreeMap<Character, Long> getContinuations(@Nonnull CharSequence text) {
+    TreeMap<Character, Long> counts = new TreeMap<>();
+    for (CharTrie trie : generation.tries()) {
+      NodeCursor cursor = trie.cursor();
+      if (text.length() == cursor.traverse(text, 0, text.length())) {
+        int parent = cursor.getIndex();
+        for (int i = 0; i < cursor.childCount(); i++) {
+          cursor.childAt(i);
+          counts.merge(cursor.token(), cursor.count(), Long::sum);
+          cursor.moveTo(parent);
+        }
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Materializes the base and all deltas as one trie, for use with the full {@link CharTrie} API.
+   */
+  @Nonnull
+  public CharTrie snapshot() {
+    List<CharTrie> tries = generation.tries();
+    return 1 == tries.size() ? tries.get(0) : CharTrie.merge(tries);
+  }
+
+  @Nonnull
+  private List<CharSequence> drainPending() {
+    List<CharSequence> documents = new ArrayList<>(pending);
+    pending.clear();
+    pendingSize = 0;
+    return documents;
+  }
+
+  private void addDelta(@Nonnull List<CharSequence> documents) {
+    CharTrieIndex index = new CharTrieIndex();
+    documents.forEach(index::addDocument);
+    CharTrie delta = index.index(maxLevels, 0).truncate();
+    int deltaCount;
+    synchronized (this) {
+      List<CharTrie> deltas = new ArrayList<>(generation.deltas);
+      deltas.add(delta);
+      generation = new Generation(generation.base, deltas);
+      deltaCount = deltas.size();
+    }
+    Executor compactor = this.compactor;
+    if (deltaCount > maxDeltas && null != compactor && compacting.compareAndSet(false, true)) {
+      compactor.execute(() -> {
+        try {
+          do {
+            compact();
+          } while (generation.deltas.size() > maxDeltas);
+        } finally {
+          compacting.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * An immutable base trie plus the deltas added since it was built.
+   */
+  private static class Generation {
+    final CharTrie base;
+    final List<CharTrie> deltas;
+
+    Generation(@Nonnull CharTrie base, @Nonnull List<CharTrie> deltas) {
+      this.base = base;
+      this.deltas = Collections.unmodifiableList(deltas);
+    }
+
+    @Nonnull
+    List<CharTrie> tries() {
+      List<CharTrie> tries = new ArrayList<>(deltas.size() + 1);
+      tries.add(base);
+      tries.addAll(deltas);
+      return tries;
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds the node tree of a {@link CharTrieIndex} breadth-first. The indices of the nodes created at one level form
+ * the frontier for the next, so every node is visited exactly once instead of re-walking the tree from the root for
+ * each depth.
+ * <p>
+ * In parallel mode each level's frontier is cut into contiguous ranges that are split by separate fork-join tasks.
+ * The nodes of one frontier own disjoint cursor ranges, so tasks only write their own slice of the cursor array and
+ * collect new child nodes in a private buffer; the buffers are then appended to the trie in frontier order and the
+ * child indices relocated, giving the same layout as a sequential build. Levels remain a barrier because the
+ * minimum-weight test reads the godparent, which lives in another subtree one level up.
+ */
+public class IndexBuilder {
+  private static final int NOT_SPLIT = -2;
+  private static final int ALREADY_SPLIT = -1;
+  private static final int MIN_CHUNK_SIZE = 16;
+
+  private final CharTrieIndex trie;
+  private final List<Integer> splitsPerLevel = new ArrayList<>();
+  private int maxLevels = Integer.MAX_VALUE;
+  private int minWeight = 0;
+  private boolean parallel = false;
+  private boolean suffixArray = false;
+  @Nonnull
+  private ForkJoinPool pool = ForkJoinPool.commonPool();
+  @Nullable
+  private PrintStream verbose = null;
+
+  public IndexBuilder(@Nonnull CharTrieIndex trie) {
+    this.trie = trie;
+  }
+
+  public int getMaxLevels() {
+    return maxLevels;
+  }
+
+  @Nonnull
+  public IndexBuilder setMaxLevels(int maxLevels) {
+    this.maxLevels = maxLevels;
+    return this;
+  }
+
+  public int getMinWeight() {
+    return minWeight;
+  }
+
+  @Nonnull
+  public IndexBuilder setMinWeight(int minWeight) {
+    this.minWeight = minWeight;
+    return this;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  @Nonnull
+  public IndexBuilder setParallel(boolean parallel) {
+    this.parallel = parallel;
+    return this;
+  }
+
+  public boolean isSuffixArray() {
+    return suffixArray;
+  }
+
+  /**
+   * Sorts all cursors once by suffix before building, so that each split only locates child boundaries in the LCP
+   * array. Requires a full-text index with a cursor at every document position.
+   */
+  @Nonnull
+  public IndexBuilder setSuffixArray(boolean suffixArray) {
+    this.suffixArray = suffixArray;
+    return this;
+  }
+
+  @Nonnull
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  @Nonnull
+  public IndexBuilder setPool(@Nonnull ForkJoinPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
+  @Nullable
+  public PrintStream getVerbose() {
+    return verbose;
+  }
+
+  @Nonnull
+  public IndexBuilder setVerbose(PrintStream verbose) {
+    this.verbose = verbose;
+    return this;
+  }
+
+  /**
+   * @return the number of nodes split at each depth of the last build, starting with the root
+   */
+  @Nonnull
+  public List<Integer> getSplitsPerLevel() {
+    return Collections.unmodifiableList(splitsPerLevel);
+  }
+
+  @Nonnull
+  public CharTrieIndex build() {
+    splitsPerLevel.clear();
+    if (!suffixArray) {
+      buildLevels();
+    } else {
+      trie.sortSuffixes();
+      try {
+        buildLevels();
+      } finally {
+        trie.clearSuffixes();
+      }
+    }
+    trie.indexGodparents();
+    return trie;
+  }
+
+  private void buildLevels() {
+    int[] frontier = {0};
+    int frontierSize = 1;
+    for (short level = 0; frontierSize > 0; level++) {
+      int[] next = new int[Math.max(16, frontierSize)];
+      int nextSize = 0;
+      int splits = 0;
+      for (LevelChunk chunk : splitLevel(frontier, frontierSize, level)) {
+        int firstChildIndex = trie.nodes.addAll(chunk.children);
+        for (int i = chunk.from; i < chunk.to; i++) {
+          int node = frontier[i];
+          int numberOfChildren = chunk.numberOfChildren[i - chunk.from];
+          if (NOT_SPLIT == numberOfChildren)
+            continue;
+          if (ALREADY_SPLIT != numberOfChildren) {
+            trie.attachChildren(node, firstChildIndex, numberOfChildren);
+            firstChildIndex += numberOfChildren;
+          }
+          splits++;
+          int firstChild = trie.nodes.getFirstChildIndex(node);
+          int childCount = trie.nodes.getNumberOfChildren(node);
+          if (next.length < nextSize + childCount) {
+            next = Arrays.copyOf(next, Math.max(next.length * 2, nextSize + childCount));
+          }
+          for (int j = 0; j < childCount; j++) {
+            next[nextSize++] = firstChild + j;
+          }
+        }
+      }
+      if (0 == splits)
+        break;
+      splitsPerLevel.add(splits);
+      if (null != verbose) {
+        verbose.println(String.format("Level %s: split %s of %s nodes", level, splits, frontierSize));
+      }
+      frontier = next;
+      frontierSize = nextSize;
+    }
+  }
+
+  @Nonnull
+  private List<LevelChunk> splitLevel(@Nonnull int[] frontier, int frontierSize, short level) {
+    int chunkCount = 1;
+    if (parallel) {
+      chunkCount = Math.max(1, Math.min(frontierSize / MIN_CHUNK_SIZE, pool.getParallelism() * 4));
+    }
+    List<LevelChunk> chunks = new ArrayList<>(chunkCount);
+    for (int i = 0; i < chunkCount; i++) {
+      chunks.add(new LevelChunk(frontier, (int) ((long) frontierSize * i / chunkCount),
+          (int) ((long) frontierSize * (i + 1) / chunkCount), level));
+    }
+    if (1 == chunkCount) {
+      chunks.get(0).invoke();
+    } else {
+      pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(chunks)));
+    }
+    return chunks;
+  }
+
+  private boolean isSplittable(int node, short level) {
+    return isSplittable(trie, node, level, maxLevels, minWeight);
+  }
+
+  static boolean isSplittable(@Nonnull CharTrie trie, int node, short level, int maxLevels, int minWeight) {
+    if (level >= maxLevels)
+      return false;
+    if (trie.nodes.getToken(node) == NodewalkerCodec.END_OF_STRING)
+      return false;
+    int godparent = trie.godparentOf(node);
+    return godparent < 0 || trie.nodes.getCursorCount(godparent) > minWeight;
+  }
+
+  private class LevelChunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    final int[] frontier;
+    final int from;
+    final int to;
+    final short level;
+    final int[] numberOfChildren;
+    final NodeStore children = new NodeStore(0);
+
+    LevelChunk(@Nonnull int[] frontier, int from, int to, short level) {
+      this.frontier = frontier;
+      this.from = from;
+      this.to = to;
+      this.level = level;
+      this.numberOfChildren = new int[to - from];
+    }
+
+    @Override
+    protected void compute() {
+      for (int i = from; i < to; i++) {
+        int node = frontier[i];
+        if (0 < level && !isSplittable(node, level)) {
+          numberOfChildren[i - from] = NOT_SPLIT;
+        } else if (trie.nodes.getFirstChildIndex(node) >= 0) {
+          numberOfChildren[i - from] = ALREADY_SPLIT;
+        } else {
+          numberOfChildren[i - from] = trie.partition(node, level, children);
+        }
+      }
+    }
+  }
+}
@@ -19,8 +19,6 @@
 
 package com.simiacryptus.text;
 
-import com.simiacryptus.util.data.SerialArrayList;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
@@ -43,9 +41,10 @@ public class IndexNode extends TrieNode {
   @Nonnull
   @Override
   public Stream<? extends IndexNode> getChildren() {
-    if (getData().firstChildIndex >= 0) {
-      return IntStream.range(0, getData().numberOfChildren)
-          .mapToObj(i -> new IndexNode(this.trie, getData().firstChildIndex + i, this));
+    int firstChildIndex = trie.nodes.getFirstChildIndex(index);
+    if (firstChildIndex >= 0) {
+      return IntStream.range(0, trie.nodes.getNumberOfChildren(index))
+          .mapToObj(i -> new IndexNode(this.trie, firstChildIndex + i, this));
     } else {
       return Stream.empty();
     }
@@ -53,39 +52,34 @@ public class IndexNode extends TrieNode {
 
   @Nonnull
   public Stream<Cursor> getCursors() {
-    return LongStream.range(0, getData().cursorCount).mapToObj(i -> {
+    long firstCursorIndex = getCursorIndex();
+    short depth = getDepth();
+    return LongStream.range(0, getCursorCount()).mapToObj(i -> {
       return new Cursor((CharTrieIndex) this.trie,
-          ((CharTrieIndex) this.trie).cursors.get((int) (i + getData().firstCursorIndex)), getDepth());
+          ((CharTrieIndex) this.trie).cursors.get((int) (i + firstCursorIndex)), depth);
     });
   }
 
+  /**
+   * Groups this node's cursors by document text. Cursors are grouped by document id first, so each document's text is
+   * materialized once rather than once per cursor.
+   */
   public Map<CharSequence, List<Cursor>> getCursorsByDocument() {
-    return this.getCursors().collect(Collectors.groupingBy((Cursor x) -> x.getDocument()));
+    DocumentStore documents = ((CharTrieIndex) this.trie).documents;
+    Map<Integer, List<Cursor>> byId = this.getCursors()
+        .collect(Collectors.groupingBy(Cursor::getDocumentId, Collectors.toCollection(ArrayList::new)));
+    Map<CharSequence, List<Cursor>> byDocument = new HashMap<>();
+    byId.forEach((documentId, cursors) -> byDocument.merge(documents.get(documentId), cursors, (a, b) -> {
+      a.addAll(b);
+      return a;
+    }));
+    return byDocument;
   }
 
   @Nullable
   public TrieNode split() {
-    if (getData().firstChildIndex < 0) {
-      TreeMap<Character, SerialArrayList<CursorData>> sortedChildren = new TreeMap<>(getCursors().parallel()
-          .collect(Collectors.groupingBy(y -> y.next().getToken(),
-              Collectors.reducing(new SerialArrayList<>(CursorType.INSTANCE, 0),
-                  cursor -> new SerialArrayList<>(CursorType.INSTANCE, cursor.data),
-                  (left, right) -> left.add(right)))));
-      long cursorWriteIndex = getData().firstCursorIndex;
-      //com.simiacryptus.ref.wrappers.System.err.println(String.format("Splitting %s into children: %s", getDebugString(), sortedChildren.keySet()));
-      ArrayList<NodeData> childNodes = new ArrayList<>(sortedChildren.size());
-      for (Map.Entry<Character, SerialArrayList<CursorData>> e : sortedChildren.entrySet()) {
-        int length = e.getValue().length();
-        ((CharTrieIndex) this.trie).cursors.putAll(e.getValue(), (int) cursorWriteIndex);
-        childNodes.add(new NodeData(e.getKey(), (short) -1, -1, length, cursorWriteIndex));
-        cursorWriteIndex += length;
-      }
-      int firstChildIndex = this.trie.nodes.addAll(childNodes);
-      short size = (short) childNodes.size();
-      trie.ensureParentIndexCapacity(firstChildIndex, size, index);
-      this.trie.nodes.update(index, data -> {
-        return data.setFirstChildIndex(firstChildIndex).setNumberOfChildren(size);
-      });
+    if (trie.nodes.getFirstChildIndex(index) < 0) {
+      ((CharTrieIndex) this.trie).split(index, getDepth());
       return new IndexNode(this.trie, index, getParent());
     } else {
       return this;
@@ -121,27 +115,8 @@ public class IndexNode extends TrieNode {
 
   @Override
   public Optional<? extends IndexNode> getChild(char token) {
-    NodeData data = getData();
-    assert data != null;
-    int min = data.firstChildIndex;
-    int max = data.firstChildIndex + data.numberOfChildren - 1;
-    while (min <= max) {
-      int i = (min + max) / 2;
-      IndexNode node = new IndexNode(this.trie, i, this);
-      char c = node.getChar();
-      int compare = Character.compare(c, token);
-      if (c < token) {
-        // node.getChar() < token
-        min = i + 1;
-      } else if (c > token) {
-        // node.getChar() > token
-        max = i - 1;
-      } else {
-        return Optional.of(node);
-      }
-    }
-    //assert !getChildren().keywords(x -> x.getChar() == token).findFirst().isPresent();
-    return Optional.empty();
+    int childIndex = findChild(token);
+    return childIndex < 0 ? Optional.empty() : Optional.of(new IndexNode(this.trie, childIndex, this));
   }
 
   @Nonnull
@@ -150,6 +125,12 @@ public class IndexNode extends TrieNode {
     return (IndexNode) super.traverse(str);
   }
 
+  @Nonnull
+  @Override
+  public IndexNode traverse(@Nonnull CharSequence str, int from, int to) {
+    return (IndexNode) super.traverse(str, from, to);
+  }
+
   @Nonnull
   @Override
   public IndexNode traverse(long cursorId) {
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only {@link CharTrie} served directly from a memory-mapped file. The file holds a short header followed by
+ * the node table (as {@link NodeType} records), the parent index and a fully populated godparent index, so queries
+ * run against the page cache and several processes can share one copy of the model.
+ */
+public class MappedCharTrie extends CharTrie {
+  private static final int MAGIC = 0x43545249;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int INDEX_SIZE = 4;
+
+  private final MappedRecords parents;
+  private final MappedRecords godparents;
+
+  private MappedCharTrie(@Nonnull MappedRecords nodes, @Nonnull MappedRecords parents,
+                         @Nonnull MappedRecords godparents) {
+    super(new MappedNodeStore(nodes));
+    this.parents = parents;
+    this.godparents = godparents;
+  }
+
+  @Nonnull
+  public static MappedCharTrie open(@Nonnull File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+      }
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || MAGIC != header.getInt()) {
+        throw new IllegalArgumentException("Not a mapped trie file: " + file);
+      }
+      int version = header.getInt();
+      if (VERSION != version) {
+        throw new IllegalArgumentException("Unsupported mapped trie version: " + version);
+      }
+      int nodeCount = header.getInt();
+      int recordSize = header.getInt();
+      if (NodeType.INSTANCE.getSize() != recordSize) {
+        throw new IllegalArgumentException("Unsupported node record size: " + recordSize);
+      }
+      long position = HEADER_SIZE;
+      MappedRecords nodes = new MappedRecords(channel, position, nodeCount, recordSize);
+      position += nodes.getByteSize();
+      MappedRecords parents = new MappedRecords(channel, position, nodeCount, INDEX_SIZE);
+      position += parents.getByteSize();
+      MappedRecords godparents = new MappedRecords(channel, position, nodeCount, INDEX_SIZE);
+      return new MappedCharTrie(nodes, parents, godparents);
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+
+  public static void write(@Nonnull CharTrie trie, @Nonnull File file) {
+    int nodeCount = trie.getNodeCount();
+    int recordSize = NodeType.INSTANCE.getSize();
+    int[] parents = new int[nodeCount];
+    int[] godparents = new int[nodeCount];
+    trie.indexLevels(parents, godparents, null);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(recordSize);
+      for (int i = 0; i < nodeCount; i++) {
+        if (buffer.remaining() < recordSize)
+          flush(channel, buffer);
+        NodeType.INSTANCE.write(buffer, trie.nodes.get(i));
+      }
+      for (int i = 0; i < nodeCount; i++) {
+        if (buffer.remaining() < INDEX_SIZE)
+          flush(channel, buffer);
+        buffer.putInt(parents[i]);
+      }
+      for (int i = 0; i < nodeCount; i++) {
+        if (buffer.remaining() < INDEX_SIZE)
+          flush(channel, buffer);
+        buffer.putInt(godparents[i]);
+      }
+      flush(channel, buffer);
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+
+  private static void flush(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  @Nonnull
+  @Override
+  public CharTrie copy() {
+    int nodeCount = getNodeCount();
+    CharTrie copy = new CharTrie(nodes.copy());
+    copy.parentIndex = new int[nodeCount];
+    copy.godparentIndex = new int[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      copy.parentIndex[i] = getParentIndex(i);
+      copy.godparentIndex[i] = getGodparentIndex(i);
+    }
+    return copy;
+  }
+
+  @Nonnull
+  @Override
+  public CharTrie indexGodparents() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  CharTrie view() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  CharTrie writable() {
+    return copy();
+  }
+
+  @Override
+  int getParentIndex(int index) {
+    return parents.getInt(index, 0);
+  }
+
+  @Override
+  int getGodparentIndex(int index) {
+    return godparents.getInt(index, 0);
+  }
+
+  @Override
+  void setGodparentIndex(int index, int godparent) {
+  }
+}
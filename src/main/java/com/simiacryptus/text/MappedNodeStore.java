@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Read-only node table backed by {@link NodeType} records in a memory-mapped file.
+ */
+class MappedNodeStore extends NodeStore {
+  private static final int TOKEN = 0;
+  private static final int NUMBER_OF_CHILDREN = 2;
+  private static final int FIRST_CHILD_INDEX = 4;
+  private static final int CURSOR_COUNT = 8;
+  private static final int FIRST_CURSOR_INDEX = 16;
+
+  private final MappedRecords records;
+
+  MappedNodeStore(@Nonnull MappedRecords records) {
+    super(0);
+    this.records = records;
+  }
+
+  @Override
+  public int getMemorySize() {
+    return (int) Math.min(Integer.MAX_VALUE, records.getByteSize());
+  }
+
+  @Override
+  public int length() {
+    return records.length();
+  }
+
+  @Override
+  public char getToken(int index) {
+    return records.getChar(index, TOKEN);
+  }
+
+  @Override
+  public short getNumberOfChildren(int index) {
+    return records.getShort(index, NUMBER_OF_CHILDREN);
+  }
+
+  @Override
+  public int getFirstChildIndex(int index) {
+    return records.getInt(index, FIRST_CHILD_INDEX);
+  }
+
+  @Override
+  public long getCursorCount(int index) {
+    return records.getLong(index, CURSOR_COUNT);
+  }
+
+  @Override
+  public long getFirstCursorIndex(int index) {
+    return records.getLong(index, FIRST_CURSOR_INDEX);
+  }
+
+  @Override
+  public void setToken(int index, char token) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public void setNumberOfChildren(int index, short numberOfChildren) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public void setFirstChildIndex(int index, int firstChildIndex) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public void setCursorCount(int index, long cursorCount) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public void setFirstCursorIndex(int index, long firstCursorIndex) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public void set(int index, @Nonnull NodeData value) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public int add(char token, short numberOfChildren, int firstChildIndex, long cursorCount, long firstCursorIndex) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Override
+  public int addAll(@Nonnull Collection<NodeData> values) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Nonnull
+  @Override
+  public NodeData update(int index, @Nonnull Function<NodeData, NodeData> update) {
+    throw new UnsupportedOperationException("Read-only node store");
+  }
+
+  @Nonnull
+  @Override
+  public NodeStore freeze() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  public NodeStore share() {
+    return this;
+  }
+
+  @Nonnull
+  @Override
+  public NodeStore copy() {
+    int length = length();
+    NodeStore copy = new NodeStore(length);
+    for (int i = 0; i < length; i++) {
+      copy.add(getToken(i), getNumberOfChildren(i), getFirstChildIndex(i), getCursorCount(i), getFirstCursorIndex(i));
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only table of fixed-size records mapped from a region of a file. Regions larger than a single
+ * {@link java.nio.MappedByteBuffer} are split into several mappings, each holding a whole number of records.
+ */
+class MappedRecords {
+  private final ByteBuffer[] segments;
+  private final int recordSize;
+  private final int recordsPerSegment;
+  private final int length;
+
+  MappedRecords(@Nonnull FileChannel channel, long position, int length, int recordSize) throws IOException {
+    this.length = length;
+    this.recordSize = recordSize;
+    this.recordsPerSegment = Integer.MAX_VALUE / recordSize;
+    int segmentCount = Math.max(1, (int) (((long) length + recordsPerSegment - 1) / recordsPerSegment));
+    this.segments = new ByteBuffer[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      long first = (long) i * recordsPerSegment;
+      long count = Math.max(0, Math.min(recordsPerSegment, length - first));
+      segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + first * recordSize, count * recordSize);
+    }
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public long getByteSize() {
+    return (long) length * recordSize;
+  }
+
+  public char getChar(int record, int offset) {
+    return segments[record / recordsPerSegment].getChar(position(record) + offset);
+  }
+
+  public short getShort(int record, int offset) {
+    return segments[record / recordsPerSegment].getShort(position(record) + offset);
+  }
+
+  public int getInt(int record, int offset) {
+    return segments[record / recordsPerSegment].getInt(position(record) + offset);
+  }
+
+  public long getLong(int record, int offset) {
+    return segments[record / recordsPerSegment].getLong(position(record) + offset);
+  }
+
+  private int position(int record) {
+    return (record % recordsPerSegment) * recordSize;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A read-only {@link CharTrie} in which identical subtrees are stored once, turning the tree into a directed acyclic
+ * word graph. Child blocks are hashed bottom-up on their tokens, counts and (already shared) child blocks, and each
+ * distinct block is written a single time; parents still precede their children in the node table.
+ * <p>
+ * {@link #traverse(String)}, {@link TrieNode#getChild(char)}, {@link TrieNode#getChildren()} and cursor counts behave
+ * as on the source trie. Since a node may now have several parents, the parent and godparent indexes are not
+ * available: node strings and depths are resolved through the path a node was reached by, and
+ * {@link TrieNode#godparent()}, continuations, the codecs, {@link NodeCursor#parent()} and the suffix-link matchers
+ * are unsupported. Cursor indexes are relative to the parent's first cursor.
+ */
+public class MinimizedCharTrie extends CharTrie {
+
+  private MinimizedCharTrie(@Nonnull NodeStore nodes) {
+    super(nodes);
+    this.childTable = ChildTable.build(nodes);
+  }
+
+  @Nonnull
+  public static MinimizedCharTrie minimize(@Nonnull CharTrie trie) {
+    return new MinimizedCharTrie(new Minimizer(trie.nodes).minimize());
+  }
+
+  @Nonnull
+  @Override
+  public CharTrie copy() {
+    return new MinimizedCharTrie(nodes.copy());
+  }
+
+  @Nonnull
+  @Override
+  CharTrie view() {
+    return new MinimizedCharTrie(nodes.share());
+  }
+
+  @Nonnull
+  @Override
+  public FrozenCharTrie freeze() {
+    throw new UnsupportedOperationException("Nodes of a minimized trie may have several parents");
+  }
+
+  @Nonnull
+  @Override
+  public CharTrie indexGodparents() {
+    throw new UnsupportedOperationException("Nodes of a minimized trie may have several parents");
+  }
+
+  @Override
+  boolean hasUniqueParents() {
+    return false;
+  }
+
+  @Override
+  int getParentIndex(int index) {
+    throw new UnsupportedOperationException("Nodes of a minimized trie may have several parents");
+  }
+
+  private static class Minimizer {
+    private final NodeStore source;
+    private final NodeStore out;
+    private final HashMap<Block, Block> blocks = new HashMap<>();
+    private int[] blockStarts = new int[16];
+    private int[] blockLengths = new int[16];
+    private int blockCount = 0;
+
+    Minimizer(@Nonnull NodeStore source) {
+      this.source = source;
+      this.out = new NodeStore(Math.max(16, source.length() / 4));
+    }
+
+    @Nonnull
+    NodeStore minimize() {
+      out.add(source.getToken(0), source.getNumberOfChildren(0), -1, source.getCursorCount(0), 0);
+      int[] order = breadthFirst();
+      int[] shared = new int[source.length()];
+      for (int i = order.length - 1; i >= 0; i--) {
+        int node = order[i];
+        int firstChild = source.getFirstChildIndex(node);
+        int numberOfChildren = source.getNumberOfChildren(node);
+        shared[node] = firstChild < 0 || numberOfChildren <= 0 ? -1 : share(firstChild, numberOfChildren, shared);
+      }
+      out.setFirstChildIndex(0, shared[0]);
+      return renumber();
+    }
+
+    /**
+     * Appends a copy of the given child block and returns the start of its canonical instance, dropping the copy
+     * again if an identical block was already written.
+     */
+    private int share(int firstChild, int numberOfChildren, @Nonnull int[] shared) {
+      int start = out.length();
+      long position = 0;
+      for (int i = 0; i < numberOfChildren; i++) {
+        int child = firstChild + i;
+        long count = source.getCursorCount(child);
+        out.add(source.getToken(child), source.getNumberOfChildren(child), shared[child], count, position);
+        position += count;
+      }
+      Block block = new Block(start, numberOfChildren);
+      Block existing = blocks.putIfAbsent(block, block);
+      if (null != existing) {
+        out.truncate(start);
+        return existing.start;
+      }
+      if (blockCount == blockStarts.length) {
+        blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+        blockLengths = Arrays.copyOf(blockLengths, blockCount * 2);
+      }
+      blockStarts[blockCount] = start;
+      blockLengths[blockCount++] = numberOfChildren;
+      return start;
+    }
+
+    /**
+     * Blocks were written children-first; rewrites them in reverse so that every node precedes its children.
+     */
+    @Nonnull
+    private NodeStore renumber() {
+      int[] remap = new int[out.length()];
+      int position = 1;
+      for (int b = blockCount - 1; b >= 0; b--) {
+        for (int i = 0; i < blockLengths[b]; i++) {
+          remap[blockStarts[b] + i] = position++;
+        }
+      }
+      NodeStore result = new NodeStore(out.length());
+      copy(result, 0, remap);
+      for (int b = blockCount - 1; b >= 0; b--) {
+        for (int i = 0; i < blockLengths[b]; i++) {
+          copy(result, blockStarts[b] + i, remap);
+        }
+      }
+      return result;
+    }
+
+    private void copy(@Nonnull NodeStore result, int index, @Nonnull int[] remap) {
+      int firstChild = out.getFirstChildIndex(index);
+      result.add(out.getToken(index), out.getNumberOfChildren(index), firstChild < 0 ? -1 : remap[firstChild],
+          out.getCursorCount(index), out.getFirstCursorIndex(index));
+    }
+
+    @Nonnull
+    private int[] breadthFirst() {
+      int[] order = new int[source.length()];
+      int size = 1;
+      for (int i = 0; i < size; i++) {
+        int firstChild = source.getFirstChildIndex(order[i]);
+        for (int j = 0; j < source.getNumberOfChildren(order[i]); j++) {
+          order[size++] = firstChild + j;
+        }
+      }
+      return Arrays.copyOf(order, size);
+    }
+
+    private class Block {
+      final int start;
+      final int length;
+      final int hash;
+
+      Block(int start, int length) {
+        this.start = start;
+        this.length = length;
+        int result = length;
+        for (int i = start; i < start + length; i++) {
+          result = 31 * result + out.getToken(i);
+          result = 31 * result + out.getNumberOfChildren(i);
+          result = 31 * result + out.getFirstChildIndex(i);
+          result = 31 * result + Long.hashCode(out.getCursorCount(i));
+        }
+        this.hash = result;
+      }
+
+      @Override
+      public boolean equals(@Nullable Object o) {
+        if (this == o)
+          return true;
+        if (!(o instanceof Block))
+          return false;
+        Block that = (Block) o;
+        if (hash != that.hash || length != that.length)
+          return false;
+        for (int i = 0; i < length; i++) {
+          int a = start + i;
+          int b = that.start + i;
+          if (out.getToken(a) != out.getToken(b) || out.getNumberOfChildren(a) != out.getNumberOfChildren(b)
+              || out.getFirstChildIndex(a) != out.getFirstChildIndex(b)
+              || out.getCursorCount(a) != out.getCursorCount(b))
+            return false;
+        }
+        return true;
+      }
+
+      @Override
+      public int hashCode() {
+        return hash;
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A mutable, reusable position within a {@link CharTrie}. Unlike {@link TrieNode}, moving a cursor does not allocate,
+ * which makes it suitable for per-character inner loops. Movement methods return false (and leave the cursor in
+ * place) when the requested node does not exist.
+ */
+public class NodeCursor {
+  private final CharTrie trie;
+  private int index;
+  private int depth;
+
+  NodeCursor(@Nonnull CharTrie trie, int index) {
+    this.trie = trie;
+    moveTo(index);
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public int depth() {
+    if (depth < 0) {
+      int d = 0;
+      for (int i = index; 0 != i; i = trie.getParentIndex(i)) {
+        d++;
+      }
+      depth = d;
+    }
+    return depth;
+  }
+
+  public char token() {
+    return trie.nodes.getToken(index);
+  }
+
+  public long count() {
+    return trie.nodes.getCursorCount(index);
+  }
+
+  public long cursorIndex() {
+    return trie.nodes.getFirstCursorIndex(index);
+  }
+
+  public int childCount() {
+    return trie.nodes.getFirstChildIndex(index) < 0 ? 0 : Math.max(0, trie.nodes.getNumberOfChildren(index));
+  }
+
+  public boolean hasChild(char token) {
+    return trie.findChild(index, token) >= 0;
+  }
+
+  public boolean descend(char token) {
+    int child = trie.findChild(index, token);
+    if (child < 0)
+      return false;
+    index = child;
+    if (depth >= 0)
+      depth++;
+    return true;
+  }
+
+  public boolean childAt(int i) {
+    if (i < 0 || i >= childCount())
+      return false;
+    index = trie.nodes.getFirstChildIndex(index) + i;
+    if (depth >= 0)
+      depth++;
+    return true;
+  }
+
+  public boolean parent() {
+    if (0 == index)
+      return false;
+    if (!trie.hasUniqueParents())
+      throw new UnsupportedOperationException("Cursor parents require a trie with unique parents");
+    index = trie.getParentIndex(index);
+    if (depth >= 0)
+      depth--;
+    return true;
+  }
+
+  public boolean godparent() {
+    int godparent = trie.godparentOf(index);
+    if (godparent < 0)
+      return false;
+    index = godparent;
+    if (depth >= 0)
+      depth = 0 == index ? 0 : depth - 1;
+    return true;
+  }
+
+  public int traverse(@Nonnull CharSequence text, int from, int to) {
+    int position = from;
+    while (position < to && descend(text.charAt(position))) {
+      position++;
+    }
+    return position - from;
+  }
+
+  @Nonnull
+  public NodeCursor reset() {
+    return moveTo(0);
+  }
+
+  @Nonnull
+  public NodeCursor moveTo(int index) {
+    this.index = index;
+    this.depth = 0 == index ? 0 : -1;
+    return this;
+  }
+
+  @Nonnull
+  public TrieNode toNode() {
+    return trie.getNode(index);
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import com.simiacryptus.util.data.SerialArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-memory node table for a {@link CharTrie}, stored as parallel primitive arrays (one per {@link NodeData} field).
+ * Fields can be read individually without materializing a node object; {@link NodeType} remains the serialized
+ * record format.
+ * <p>
+ * {@link #share()} hands out stores backed by the same arrays; the first write to any of them copies the arrays for
+ * that store alone. A store returned by {@link #freeze()} rejects writes altogether.
+ */
+class NodeStore {
+  private char[] tokens;
+  private short[] numberOfChildren;
+  private int[] firstChildIndex;
+  private long[] cursorCount;
+  private long[] firstCursorIndex;
+  private int length = 0;
+  @Nullable
+  private AtomicInteger sharers = null;
+  private boolean frozen = false;
+
+  public NodeStore(int capacity) {
+    capacity = Math.max(capacity, 1);
+    this.tokens = new char[capacity];
+    this.numberOfChildren = new short[capacity];
+    this.firstChildIndex = new int[capacity];
+    this.cursorCount = new long[capacity];
+    this.firstCursorIndex = new long[capacity];
+  }
+
+  public NodeStore(@Nonnull NodeData... items) {
+    this(items.length);
+    for (NodeData item : items) {
+      add(item);
+    }
+  }
+
+  public NodeStore(@Nonnull SerialArrayList<NodeData> items) {
+    this(items.length());
+    for (int i = 0; i < items.length(); i++) {
+      add(items.get(i));
+    }
+  }
+
+  protected NodeStore(@Nonnull NodeStore copyFrom) {
+    synchronized (copyFrom) {
+      this.length = copyFrom.length;
+      this.tokens = Arrays.copyOf(copyFrom.tokens, copyFrom.length);
+      this.numberOfChildren = Arrays.copyOf(copyFrom.numberOfChildren, copyFrom.length);
+      this.firstChildIndex = Arrays.copyOf(copyFrom.firstChildIndex, copyFrom.length);
+      this.cursorCount = Arrays.copyOf(copyFrom.cursorCount, copyFrom.length);
+      this.firstCursorIndex = Arrays.copyOf(copyFrom.firstCursorIndex, copyFrom.length);
+    }
+  }
+
+  public int getMemorySize() {
+    return tokens.length * NodeType.INSTANCE.getSize();
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public char getToken(int index) {
+    return tokens[index];
+  }
+
+  public short getNumberOfChildren(int index) {
+    return numberOfChildren[index];
+  }
+
+  public int getFirstChildIndex(int index) {
+    return firstChildIndex[index];
+  }
+
+  public long getCursorCount(int index) {
+    return cursorCount[index];
+  }
+
+  public long getFirstCursorIndex(int index) {
+    return firstCursorIndex[index];
+  }
+
+  public void setToken(int index, char token) {
+    beforeWrite();
+    tokens[index] = token;
+  }
+
+  public void setNumberOfChildren(int index, short numberOfChildren) {
+    beforeWrite();
+    this.numberOfChildren[index] = numberOfChildren;
+  }
+
+  public void setFirstChildIndex(int index, int firstChildIndex) {
+    beforeWrite();
+    this.firstChildIndex[index] = firstChildIndex;
+  }
+
+  public void setCursorCount(int index, long cursorCount) {
+    beforeWrite();
+    this.cursorCount[index] = cursorCount;
+  }
+
+  public void setFirstCursorIndex(int index, long firstCursorIndex) {
+    beforeWrite();
+    this.firstCursorIndex[index] = firstCursorIndex;
+  }
+
+  @Nonnull
+  public NodeData get(int index) {
+    return new NodeData(getToken(index), getNumberOfChildren(index), getFirstChildIndex(index), getCursorCount(index),
+        getFirstCursorIndex(index));
+  }
+
+  public synchronized void set(int index, @Nonnull NodeData value) {
+    beforeWrite();
+    tokens[index] = value.token;
+    numberOfChildren[index] = value.numberOfChildren;
+    firstChildIndex[index] = value.firstChildIndex;
+    cursorCount[index] = value.cursorCount;
+    firstCursorIndex[index] = value.firstCursorIndex;
+  }
+
+  public synchronized int add(char token, short numberOfChildren, int firstChildIndex, long cursorCount,
+                              long firstCursorIndex) {
+    ensureCapacity(length + 1);
+    int index = length++;
+    this.tokens[index] = token;
+    this.numberOfChildren[index] = numberOfChildren;
+    this.firstChildIndex[index] = firstChildIndex;
+    this.cursorCount[index] = cursorCount;
+    this.firstCursorIndex[index] = firstCursorIndex;
+    return index;
+  }
+
+  public synchronized int add(@Nonnull NodeData value) {
+    return add(value.token, value.numberOfChildren, value.firstChildIndex, value.cursorCount, value.firstCursorIndex);
+  }
+
+  public synchronized int addAll(@Nonnull Collection<NodeData> values) {
+    ensureCapacity(length + values.size());
+    int firstIndex = length;
+    for (NodeData value : values) {
+      add(value);
+    }
+    return firstIndex;
+  }
+
+  public synchronized int addAll(@Nonnull NodeStore values) {
+    int count = values.length();
+    ensureCapacity(length + count);
+    int firstIndex = length;
+    if (values.getClass() == NodeStore.class) {
+      System.arraycopy(values.tokens, 0, tokens, firstIndex, count);
+      System.arraycopy(values.numberOfChildren, 0, numberOfChildren, firstIndex, count);
+      System.arraycopy(values.firstChildIndex, 0, firstChildIndex, firstIndex, count);
+      System.arraycopy(values.cursorCount, 0, cursorCount, firstIndex, count);
+      System.arraycopy(values.firstCursorIndex, 0, firstCursorIndex, firstIndex, count);
+      length += count;
+    } else {
+      for (int i = 0; i < count; i++) {
+        add(values.getToken(i), values.getNumberOfChildren(i), values.getFirstChildIndex(i), values.getCursorCount(i),
+            values.getFirstCursorIndex(i));
+      }
+    }
+    return firstIndex;
+  }
+
+  /**
+   * Drops all nodes from {@code length} onwards.
+   */
+  public synchronized void truncate(int length) {
+    assert 0 <= length && length <= this.length;
+    this.length = length;
+  }
+
+  @Nonnull
+  public synchronized NodeData update(int index, @Nonnull Function<NodeData, NodeData> update) {
+    NodeData value = update.apply(get(index));
+    set(index, value);
+    return value;
+  }
+
+  @Nonnull
+  public NodeStore copy() {
+    return new NodeStore(this);
+  }
+
+  /**
+   * Returns a trimmed copy of this store that rejects all writes.
+   */
+  @Nonnull
+  public NodeStore freeze() {
+    NodeStore frozen = new NodeStore(this);
+    frozen.frozen = true;
+    return frozen;
+  }
+
+  /**
+   * Returns a store with the same contents that shares this store's arrays until either one is written to.
+   */
+  @Nonnull
+  public synchronized NodeStore share() {
+    if (null == sharers)
+      sharers = new AtomicInteger(1);
+    sharers.incrementAndGet();
+    NodeStore view = new NodeStore(1);
+    view.tokens = tokens;
+    view.numberOfChildren = numberOfChildren;
+    view.firstChildIndex = firstChildIndex;
+    view.cursorCount = cursorCount;
+    view.firstCursorIndex = firstCursorIndex;
+    view.length = length;
+    view.sharers = sharers;
+    return view;
+  }
+
+  @Nonnull
+  public SerialArrayList<NodeData> toSerialArrayList() {
+    int length = length();
+    SerialArrayList<NodeData> list = new SerialArrayList<>(NodeType.INSTANCE, length);
+    for (int i = 0; i < length; i++) {
+      list.add(get(i));
+    }
+    return list;
+  }
+
+  protected void ensureCapacity(int capacity) {
+    beforeWrite();
+    if (tokens.length < capacity) {
+      int newCapacity = Math.max(capacity, tokens.length * 2);
+      tokens = Arrays.copyOf(tokens, newCapacity);
+      numberOfChildren = Arrays.copyOf(numberOfChildren, newCapacity);
+      firstChildIndex = Arrays.copyOf(firstChildIndex, newCapacity);
+      cursorCount = Arrays.copyOf(cursorCount, newCapacity);
+      firstCursorIndex = Arrays.copyOf(firstCursorIndex, newCapacity);
+    }
+  }
+
+  private void beforeWrite() {
+    if (frozen)
+      throw new UnsupportedOperationException("Read-only node store");
+    if (null != sharers)
+      detach();
+  }
+
+  /**
+   * Stops sharing before a write, copying the arrays unless this is the last sharer. The shared counter stays locked
+   * until the copy is complete, so the last sharer cannot start writing in place while another is still copying.
+   */
+  private synchronized void detach() {
+    if (null == sharers)
+      return;
+    synchronized (sharers) {
+      if (0 < sharers.decrementAndGet()) {
+        tokens = Arrays.copyOf(tokens, tokens.length);
+        numberOfChildren = Arrays.copyOf(numberOfChildren, numberOfChildren.length);
+        firstChildIndex = Arrays.copyOf(firstChildIndex, firstChildIndex.length);
+        cursorCount = Arrays.copyOf(cursorCount, cursorCount.length);
+        firstCursorIndex = Arrays.copyOf(firstCursorIndex, firstCursorIndex.length);
+      }
+    }
+    sharers = null;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof NodeStore))
+      return false;
+
+    NodeStore that = (NodeStore) o;
+    int length = length();
+    if (length != that.length())
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (getToken(i) != that.getToken(i))
+        return false;
+      if (getNumberOfChildren(i) != that.getNumberOfChildren(i))
+        return false;
+      if (getFirstChildIndex(i) != that.getFirstChildIndex(i))
+        return false;
+      if (getCursorCount(i) != that.getCursorCount(i))
+        return false;
+      if (getFirstCursorIndex(i) != that.getFirstCursorIndex(i))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int length = length();
+    int result = length;
+    for (int i = 0; i < length; i++) {
+      result = 31 * result + getToken(i);
+      result = 31 * result + (int) getNumberOfChildren(i);
+      result = 31 * result + getFirstChildIndex(i);
+      result = 31 * result + Long.hashCode(getCursorCount(i));
+      result = 31 * result + Long.hashCode(getFirstCursorIndex(i));
+    }
+    return result;
+  }
+}
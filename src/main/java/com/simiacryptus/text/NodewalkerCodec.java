@@ -230,13 +230,14 @@ public class NodewalkerCodec {
     @Nonnull
     protected Bits encodePPM() {
       try {
-        for (char token : text.toCharArray()) {
-          assert node != null;
-          Optional<TrieNode> child = (Optional<TrieNode>) node.getChild(token);
-          if (!child.isPresent()) {
+        NodeCursor cursor = inner.cursor();
+        for (int i = 0; i < text.length(); i++) {
+          char token = text.charAt(i);
+          if (!cursor.descend(token)) {
+            node = cursor.toNode();
             writeForward(this);
             fromNode = node;
-            child = writeBackup(this, token);
+            Optional<TrieNode> child = writeBackup(this, token);
             if (null == node) {
               if (verbose != null)
                 verbose.println(String.format("Literal token %s", token));
@@ -247,10 +248,10 @@ public class NodewalkerCodec {
               fromNode = node;
               node = child.get();
             }
-          } else {
-            node = child.get();
+            cursor.moveTo(node.index);
           }
         }
+        node = cursor.toNode();
         writeTerminal(this);
         out.flush();
         return new Bits(buffer.toByteArray(), out.getTotalBitsWritten());
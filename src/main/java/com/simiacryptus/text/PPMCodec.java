@@ -131,15 +131,17 @@ public class PPMCodec {
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
     BitOutputStream out = new BitOutputStream(buffer);
     String contextStr = "";
+    int position = 0;
     try {
-      while (!text.isEmpty()) {
+      while (position < text.length()) {
         String right = getRight(contextStr, context);
         TrieNode fromNode = inner.matchPredictor(right); // inner.matchEnd(right).getString()
         assert fromNode != null;
         String prefix = fromNode.getString();
         // fromNode.getChildrenMap()
-        TrieNode toNode = fromNode.traverse(text);
-        int segmentChars = toNode.getDepth() - fromNode.getDepth();
+        NodeCursor cursor = fromNode.cursor();
+        int segmentChars = cursor.traverse(text, position, text.length());
+        TrieNode toNode = 0 == segmentChars ? fromNode : cursor.toNode();
         if (toNode.hasChildren()) {
           if (prefix.isEmpty() && 0 == segmentChars) {
             Optional<? extends TrieNode> child = toNode.getChild(ESCAPE);
@@ -162,21 +164,21 @@ public class PPMCodec {
         if (0 == segmentChars) {
           if (prefix.isEmpty()) {
             //throw new RuntimeException(String.format("Cannot encode %s in model", text.substring(0,1)));
-            char exotic = text.charAt(0);
+            char exotic = text.charAt(position);
             out.write(exotic);
             if (verbose) {
               System.out
                   .println(String.format("Writing exotic character %s -> %s", exotic, new Bits(exotic, 16)));
             }
-            text = text.substring(1);
+            position++;
           } else if (toNode.getChar() == FALLBACK) {
             contextStr = prefix.substring(1);
           } else {
-            throw new RuntimeException("Cannot encode " + text.substring(0, 1));
+            throw new RuntimeException("Cannot encode " + text.charAt(position));
           }
         } else {
-          contextStr += text.substring(0, segmentChars);
-          text = text.substring(segmentChars);
+          contextStr += text.substring(position, position + segmentChars);
+          position += segmentChars;
         }
       }
       out.flush();
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Cursor table that stores each cursor as a single offset into the packed corpus of the index's
+ * {@link DocumentStore}, 4 bytes per cursor instead of 8. Document ids are resolved by binary search over the
+ * document store's start offsets, which also bounds the corpus to an int.
+ */
+class PackedCursorStore implements CursorStore {
+  private final DocumentStore documents;
+  private int[] offsets;
+  private int length = 0;
+
+  public PackedCursorStore(@Nonnull DocumentStore documents, int capacity) {
+    this.documents = documents;
+    this.offsets = new int[Math.max(capacity, 1)];
+  }
+
+  protected PackedCursorStore(@Nonnull PackedCursorStore copyFrom, @Nonnull DocumentStore documents) {
+    this.documents = documents;
+    synchronized (copyFrom) {
+      this.length = copyFrom.length;
+      this.offsets = Arrays.copyOf(copyFrom.offsets, Math.max(copyFrom.length, 1));
+    }
+  }
+
+  @Override
+  public int getMemorySize() {
+    return offsets.length * 4;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public int getDocumentId(int index) {
+    return documents.getDocumentAt(offsets[index]);
+  }
+
+  @Override
+  public int getPosition(int index) {
+    return getPosition(index, getDocumentId(index));
+  }
+
+  @Override
+  public int getPosition(int index, int documentId) {
+    return (int) (offsets[index] - documents.getStart(documentId));
+  }
+
+  @Override
+  public long getCorpusOffset(int index, @Nonnull DocumentStore documents) {
+    return offsets[index];
+  }
+
+  @Override
+  public long getEntry(int index) {
+    return offsets[index];
+  }
+
+  @Override
+  public void putEntries(int index, @Nonnull long[] entries, int count) {
+    for (int i = 0; i < count; i++) {
+      offsets[index + i] = (int) entries[i];
+    }
+  }
+
+  @Override
+  public void set(int index, int documentId, int position) {
+    offsets[index] = (int) (documents.getStart(documentId) + position);
+  }
+
+  @Override
+  public synchronized int add(int documentId, int position) {
+    ensureCapacity(length + 1);
+    int index = length++;
+    set(index, documentId, position);
+    return index;
+  }
+
+  @Override
+  public synchronized int addAll(int documentId, @Nonnull int[] positions) {
+    ensureCapacity(length + positions.length);
+    int firstIndex = length;
+    int start = (int) documents.getStart(documentId);
+    for (int position : positions) {
+      offsets[length++] = start + position;
+    }
+    return firstIndex;
+  }
+
+  @Nonnull
+  @Override
+  public PackedCursorStore copy(@Nonnull DocumentStore documents) {
+    return new PackedCursorStore(this, documents);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (offsets.length < capacity) {
+      offsets = Arrays.copyOf(offsets, Math.max(capacity, offsets.length * 2));
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof CursorStore))
+      return false;
+    return CursorStore.equals(this, (CursorStore) o);
+  }
+
+  @Override
+  public int hashCode() {
+    return CursorStore.hashCode(this);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Suffix array construction by induced sorting (SA-IS) over an integer alphabet, plus Kasai's linear-time LCP array.
+ */
+class SuffixArray {
+  private static final int NAIVE_THRESHOLD = 10;
+
+  private SuffixArray() {
+  }
+
+  /**
+   * Returns the start offsets of all suffixes of {@code text} in lexicographic order. Symbols must lie in
+   * {@code [0, upper]}.
+   */
+  @Nonnull
+  static int[] sort(@Nonnull int[] text, int upper) {
+    int n = text.length;
+    if (n < NAIVE_THRESHOLD) {
+      return sortNaive(text);
+    }
+    int[] sa = new int[n];
+    boolean[] ls = new boolean[n];
+    for (int i = n - 2; i >= 0; i--) {
+      ls[i] = text[i] == text[i + 1] ? ls[i + 1] : text[i] < text[i + 1];
+    }
+    int[] sumL = new int[upper + 2];
+    int[] sumS = new int[upper + 2];
+    for (int i = 0; i < n; i++) {
+      if (!ls[i]) {
+        sumS[text[i]]++;
+      } else {
+        sumL[text[i] + 1]++;
+      }
+    }
+    for (int i = 0; i <= upper; i++) {
+      sumS[i] += sumL[i];
+      sumL[i + 1] += sumS[i];
+    }
+
+    int[] lmsMap = new int[n + 1];
+    Arrays.fill(lmsMap, -1);
+    int m = 0;
+    for (int i = 1; i < n; i++) {
+      if (!ls[i - 1] && ls[i]) {
+        lmsMap[i] = m++;
+      }
+    }
+    int[] lms = new int[m];
+    for (int i = 1, j = 0; i < n; i++) {
+      if (!ls[i - 1] && ls[i]) {
+        lms[j++] = i;
+      }
+    }
+    int[] buffer = new int[upper + 2];
+    induce(text, sa, ls, sumL, sumS, buffer, lms);
+
+    if (0 < m) {
+      int[] sortedLms = new int[m];
+      for (int i = 0, j = 0; i < n; i++) {
+        if (-1 != lmsMap[sa[i]]) {
+          sortedLms[j++] = sa[i];
+        }
+      }
+      int[] reduced = new int[m];
+      int reducedUpper = 0;
+      reduced[lmsMap[sortedLms[0]]] = 0;
+      for (int i = 1; i < m; i++) {
+        int l = sortedLms[i - 1];
+        int r = sortedLms[i];
+        int endL = lmsMap[l] + 1 < m ? lms[lmsMap[l] + 1] : n;
+        int endR = lmsMap[r] + 1 < m ? lms[lmsMap[r] + 1] : n;
+        boolean same = true;
+        if (endL - l != endR - r) {
+          same = false;
+        } else {
+          while (l < endL && text[l] == text[r]) {
+            l++;
+            r++;
+          }
+          if (l == n || text[l] != text[r])
+            same = false;
+        }
+        if (!same)
+          reducedUpper++;
+        reduced[lmsMap[sortedLms[i]]] = reducedUpper;
+      }
+      int[] reducedSa = sort(reduced, reducedUpper);
+      for (int i = 0; i < m; i++) {
+        sortedLms[i] = lms[reducedSa[i]];
+      }
+      induce(text, sa, ls, sumL, sumS, buffer, sortedLms);
+    }
+    return sa;
+  }
+
+  /**
+   * Returns the longest common prefix of each suffix with its predecessor in {@code sa}; entry 0 is 0.
+   */
+  @Nonnull
+  static int[] lcp(@Nonnull int[] text, @Nonnull int[] sa) {
+    int n = text.length;
+    int[] rank = new int[n];
+    for (int i = 0; i < n; i++) {
+      rank[sa[i]] = i;
+    }
+    int[] lcp = new int[n];
+    int h = 0;
+    for (int i = 0; i < n; i++) {
+      if (h > 0)
+        h--;
+      if (rank[i] == 0) {
+        h = 0;
+        continue;
+      }
+      int j = sa[rank[i] - 1];
+      while (j + h < n && i + h < n && text[j + h] == text[i + h]) {
+        h++;
+      }
+      lcp[rank[i]] = h;
+    }
+    return lcp;
+  }
+
+  private static void induce(@Nonnull int[] text, @Nonnull int[] sa, @Nonnull boolean[] ls, @Nonnull int[] sumL,
+                             @Nonnull int[] sumS, @Nonnull int[] buffer, @Nonnull int[] lms) {
+    int n = text.length;
+    Arrays.fill(sa, -1);
+    System.arraycopy(sumS, 0, buffer, 0, buffer.length);
+    for (int d : lms) {
+      if (d != n) {
+        sa[buffer[text[d]]++] = d;
+      }
+    }
+    System.arraycopy(sumL, 0, buffer, 0, buffer.length);
+    sa[buffer[text[n - 1]]++] = n - 1;
+    for (int i = 0; i < n; i++) {
+      int v = sa[i];
+      if (v >= 1 && !ls[v - 1]) {
+        sa[buffer[text[v - 1]]++] = v - 1;
+      }
+    }
+    System.arraycopy(sumL, 0, buffer, 0, buffer.length);
+    for (int i = n - 1; i >= 0; i--) {
+      int v = sa[i];
+      if (v >= 1 && ls[v - 1]) {
+        sa[--buffer[text[v - 1] + 1]] = v - 1;
+      }
+    }
+  }
+
+  @Nonnull
+  private static int[] sortNaive(@Nonnull int[] text) {
+    return IntStream.range(0, text.length).boxed().sorted((a, b) -> compareSuffixes(text, a, b))
+        .mapToInt(x -> x).toArray();
+  }
+
+  private static int compareSuffixes(@Nonnull int[] text, int a, int b) {
+    while (a < text.length && b < text.length) {
+      if (text[a] != text[b])
+        return Integer.compare(text[a], text[b]);
+      a++;
+      b++;
+    }
+    return Integer.compare(text.length - a, text.length - b);
+  }
+}
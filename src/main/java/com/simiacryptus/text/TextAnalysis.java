@@ -210,17 +210,19 @@ public class TextAnalysis {
 
   public double entropy(@Nonnull final CharSequence source) {
     double output = 0;
+    NodeCursor cursor = this.inner.cursor();
+    ContextMatcher matcher = this.inner.matcher();
     for (int i = 1; i < source.length(); i++) {
-      TrieNode node = this.inner.matchEnd(source.subSequence(0, i).toString());
-      assert node != null;
-      Optional<? extends TrieNode> child = node.getChild(source.charAt(i));
-      while (!child.isPresent()) {
-        output += Math.log(1.0 / node.getCursorCount());
-        node = node.godparent();
-        assert node != null;
-        child = node.getChild(source.charAt(i));
+      cursor.moveTo(matcher.accept(source.charAt(i - 1)).getIndex());
+      char token = source.charAt(i);
+      while (!cursor.hasChild(token)) {
+        output += Math.log(1.0 / cursor.count());
+        if (!cursor.godparent())
+          throw new IllegalArgumentException(String.format("Token %s not in model", token));
       }
-      output += Math.log(child.get().getCursorCount() * 1.0 / node.getCursorCount());
+      long contextCount = cursor.count();
+      cursor.descend(token);
+      output += Math.log(cursor.count() * 1.0 / contextCount);
     }
     return -output / Math.log(2);
   }
@@ -30,7 +30,7 @@ import java.util.stream.Stream;
 
 public class TextGenerator {
 
-  private final CharTrie inner;
+  private CharTrie inner;
 
   TextGenerator(CharTrie inner) {
     this.inner = inner;
@@ -74,6 +74,8 @@ public class TextGenerator {
   @Nonnull
   public String generateDictionary(int length, int context, final String seed, int lookahead, boolean destructive,
                                    boolean terminateAtNull) {
+    if (destructive)
+      inner = inner.writable();
     String str = seed;
     String prefix = "";
     while (str.length() < length) {
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.simiacryptus.text.NodewalkerCodec.END_OF_STRING;
+
+/**
+ * Sums any number of tries in one pass, walking the sorted child blocks of all inputs together. The result has the
+ * same nodes in the same order as folding the inputs with {@link CharTrie#add(CharTrie)}. Each branch below the root is
+ * merged into its own buffer in parallel and appended in token order. A merged node counts its children plus whatever
+ * each input counted on the node itself beyond its own children, so leaves of a pruned or depth-limited input keep
+ * their counts when another input extends them.
+ */
+class TrieMerger {
+  private final CharTrie[] tries;
+  @Nullable
+  private final double[] weights;
+
+  TrieMerger(@Nonnull List<? extends CharTrie> tries) {
+    this(tries, null);
+  }
+
+  /**
+   * @param weights per-input factors applied to leaf counts before summing (rounded), or null to add counts as is
+   */
+  TrieMerger(@Nonnull List<? extends CharTrie> tries, @Nullable double[] weights) {
+    this.tries = tries.toArray(new CharTrie[]{});
+    this.weights = weights;
+  }
+
+  @Nonnull
+  CharTrie merge() {
+    int k = tries.length;
+    NodeStore nodes = new NodeStore(Arrays.stream(tries).mapToInt(t -> t.getNodeCount()).max().orElse(1));
+    nodes.add(END_OF_STRING, (short) -1, -1, 0, 0);
+    int[] rootSources = new int[k];
+    Branch root = new Branch();
+    int numberOfChildren = root.writeChildren(nodes, 0, rootSources, 0, 0);
+    int[] childSources = Arrays.copyOf(root.getSources(0), numberOfChildren * k);
+    int firstChild = nodes.getFirstChildIndex(0);
+    NodeStore[] branches = IntStream.range(0, numberOfChildren).parallel().mapToObj(i -> {
+      NodeStore branch = new NodeStore(16);
+      branch.add(nodes.getToken(firstChild + i), (short) -1, -1, nodes.getCursorCount(firstChild + i), 0);
+      new Branch().expand(branch, 0, childSources, i * k, 1, 0);
+      return branch;
+    }).toArray(i -> new NodeStore[i]);
+    long position = 0;
+    for (int i = 0; i < numberOfChildren; i++) {
+      append(nodes, firstChild + i, branches[i], position);
+      position += nodes.getCursorCount(firstChild + i);
+    }
+    nodes.setCursorCount(0, position + root.leftover(rootSources, 0));
+
+    return new CharTrie(nodes).indexGodparents();
+  }
+
+  /**
+   * Copies a branch merged into its own buffer (rooted at index 0) onto {@code target}, appending its descendants and
+   * relocating child and cursor indices.
+   */
+  private static void append(@Nonnull NodeStore nodes, int target, @Nonnull NodeStore branch, long cursorOffset) {
+    int base = nodes.length() - 1;
+    int firstChild = branch.getFirstChildIndex(0);
+    nodes.setFirstChildIndex(target, firstChild < 0 ? firstChild : base + firstChild);
+    nodes.setNumberOfChildren(target, branch.getNumberOfChildren(0));
+    nodes.setCursorCount(target, branch.getCursorCount(0));
+    nodes.setFirstCursorIndex(target, branch.getFirstCursorIndex(0) + cursorOffset);
+    for (int i = 1; i < branch.length(); i++) {
+      firstChild = branch.getFirstChildIndex(i);
+      nodes.add(branch.getToken(i), branch.getNumberOfChildren(i), firstChild < 0 ? firstChild : base + firstChild,
+          branch.getCursorCount(i), branch.getFirstCursorIndex(i) + cursorOffset);
+    }
+  }
+
+  /**
+   * Depth-first merge state for one branch; scratch arrays are reused across nodes.
+   */
+  private class Branch {
+    private final int[] next = new int[tries.length];
+    private final int[] end = new int[tries.length];
+    private int[][] sources = new int[16][];
+
+    int[] getSources(int depth) {
+      return sources[depth];
+    }
+
+    /**
+     * Merges the subtree below {@code node}, whose source node in each input is given by {@code sources} starting at
+     * {@code offset} (-1 where absent), and assigns cursor positions from {@code position}.
+     */
+    void expand(@Nonnull NodeStore nodes, int node, @Nonnull int[] sources, int offset, int depth, long position) {
+      nodes.setFirstCursorIndex(node, position);
+      int numberOfChildren = writeChildren(nodes, node, sources, offset, depth);
+      if (0 == numberOfChildren)
+        return;
+      int firstChild = nodes.getFirstChildIndex(node);
+      int[] childSources = getSources(depth);
+      long childPosition = position;
+      for (int i = 0; i < numberOfChildren; i++) {
+        expand(nodes, firstChild + i, childSources, i * tries.length, depth + 1, childPosition);
+        childPosition += nodes.getCursorCount(firstChild + i);
+      }
+      nodes.setCursorCount(node, childPosition - position + leftover(sources, offset));
+    }
+
+    /**
+     * Sums (weighted, rounded) what each source node counts beyond its own children, e.g. a leaf of a pruned input
+     * that another input extends.
+     */
+    long leftover(@Nonnull int[] sources, int offset) {
+      long cursorCount = 0;
+      double weightedCount = 0;
+      for (int t = 0; t < tries.length; t++) {
+        int source = sources[offset + t];
+        if (source < 0)
+          continue;
+        NodeStore input = tries[t].nodes;
+        long own = Math.max(0, input.getCursorCount(source));
+        int firstChild = input.getFirstChildIndex(source);
+        if (firstChild >= 0) {
+          for (int i = 0; i < input.getNumberOfChildren(source); i++) {
+            own -= input.getCursorCount(firstChild + i);
+          }
+        }
+        if (null == weights) {
+          cursorCount += Math.max(0, own);
+        } else {
+          weightedCount += Math.max(0, own) * weights[t];
+        }
+      }
+      return null == weights ? cursorCount : Math.round(weightedCount);
+    }
+
+    /**
+     * Appends the union of the source nodes' children, with summed counts, as one block and records each child's
+     * source nodes in the scratch row for {@code depth}.
+     */
+    int writeChildren(@Nonnull NodeStore nodes, int node, @Nonnull int[] sources, int offset, int depth) {
+      int k = tries.length;
+      int total = 0;
+      for (int t = 0; t < k; t++) {
+        int source = sources[offset + t];
+        int firstChild = source < 0 ? -1 : tries[t].nodes.getFirstChildIndex(source);
+        if (firstChild < 0) {
+          next[t] = end[t] = 0;
+        } else {
+          next[t] = firstChild;
+          end[t] = firstChild + tries[t].nodes.getNumberOfChildren(source);
+          total += end[t] - next[t];
+        }
+      }
+      int[] childSources = reserve(depth, total * k);
+      int firstIndex = nodes.length();
+      int numberOfChildren = 0;
+      while (true) {
+        boolean found = false;
+        char token = 0;
+        for (int t = 0; t < k; t++) {
+          if (next[t] < end[t]) {
+            char candidate = tries[t].nodes.getToken(next[t]);
+            if (!found || candidate < token) {
+              token = candidate;
+              found = true;
+            }
+          }
+        }
+        if (!found)
+          break;
+        long cursorCount = 0;
+        double weightedCount = 0;
+        int row = numberOfChildren * k;
+        for (int t = 0; t < k; t++) {
+          if (next[t] < end[t] && tries[t].nodes.getToken(next[t]) == token) {
+            if (null == weights) {
+              cursorCount += tries[t].nodes.getCursorCount(next[t]);
+            } else {
+              weightedCount += tries[t].nodes.getCursorCount(next[t]) * weights[t];
+            }
+            childSources[row + t] = next[t]++;
+          } else {
+            childSources[row + t] = -1;
+          }
+        }
+        if (null != weights) {
+          cursorCount = Math.round(weightedCount);
+        }
+        if (cursorCount > 0) {
+          nodes.add(token, (short) -1, -1, cursorCount, -1);
+          numberOfChildren++;
+        }
+      }
+      if (0 < numberOfChildren) {
+        nodes.setFirstChildIndex(node, firstIndex);
+        nodes.setNumberOfChildren(node, (short) numberOfChildren);
+      }
+      return numberOfChildren;
+    }
+
+    @Nonnull
+    private int[] reserve(int depth, int size) {
+      if (sources.length <= depth) {
+        sources = Arrays.copyOf(sources, Math.max(depth + 1, sources.length * 2));
+      }
+      if (null == sources[depth] || sources[depth].length < size) {
+        sources[depth] = new int[Math.max(size, 16)];
+      }
+      return sources[depth];
+    }
+  }
+}
@@ -40,13 +40,10 @@ public class TrieNode {
   private transient short depth = -1;
   @Nullable
   private transient TrieNode parent = null;
-  @Nullable
-  private transient NodeData data;
 
   public TrieNode(@Nonnull CharTrie trie, int index) {
     assert 0 <= index;
-    assert trie.parentIndex != null;
-    assert 0 == index || trie.parentIndex[index] >= 0;
+    assert 0 == index || !trie.hasUniqueParents() || trie.getParentIndex(index) >= 0;
     this.trie = trie;
     this.index = index;
   }
@@ -60,13 +57,14 @@ public class TrieNode {
   }
 
   public char getChar() {
-    return getData().token;
+    return trie.nodes.getToken(index);
   }
 
   public Stream<? extends TrieNode> getChildren() {
-    if (getData().firstChildIndex >= 0) {
-      return IntStream.range(0, getData().numberOfChildren)
-          .mapToObj(i -> new TrieNode(this.trie, getData().firstChildIndex + i, TrieNode.this));
+    int firstChildIndex = trie.nodes.getFirstChildIndex(index);
+    if (firstChildIndex >= 0) {
+      return IntStream.range(0, trie.nodes.getNumberOfChildren(index))
+          .mapToObj(i -> new TrieNode(this.trie, firstChildIndex + i, TrieNode.this));
     } else {
       return Stream.empty();
     }
@@ -80,23 +78,16 @@ public class TrieNode {
   }
 
   public long getCursorCount() {
-    return getData().cursorCount;
+    return trie.nodes.getCursorCount(index);
   }
 
   public long getCursorIndex() {
-    return getData().firstCursorIndex;
+    return trie.nodes.getFirstCursorIndex(index);
   }
 
-  @Nullable
+  @Nonnull
   NodeData getData() {
-    if (null == data) {
-      synchronized (this) {
-        if (null == data) {
-          this.data = this.trie.nodes.get(index);
-        }
-      }
-    }
-    return data;
+    return this.trie.nodes.get(index);
   }
 
   @Nonnull
@@ -124,6 +115,9 @@ public class TrieNode {
     if (0 == index)
       return 0;
     if (-1 == depth) {
+      short known = trie.getDepth(index);
+      if (known >= 0)
+        return known;
       synchronized (this) {
         if (-1 == depth) {
           TrieNode parent = getParent();
@@ -149,18 +143,19 @@ public class TrieNode {
   }
 
   public short getNumberOfChildren() {
-    return getData().numberOfChildren;
+    return trie.nodes.getNumberOfChildren(index);
   }
 
   @Nullable
   public TrieNode getParent() {
     if (0 == index)
       return null;
+    if (null == parent && trie.isFrozen())
+      return newNode(trie.getParentIndex(index));
     if (null == parent && -1 == depth) {
       synchronized (this) {
         if (null == parent) {
-          assert trie.parentIndex != null;
-          parent = newNode(trie.parentIndex[index]);
+          parent = newNode(trie.getParentIndex(index));
           assert parent.index < index;
         }
       }
@@ -170,12 +165,66 @@ public class TrieNode {
 
   @Nonnull
   public String getRawString() {
-    return 0 == getDepth() ? "" : getParent().getRawString() + new String(new char[]{getChar()});
+    char[] path = new char[getDepth()];
+    return new String(path, 0, pathChars(path));
   }
 
   @Nonnull
   public String getString() {
-    return (null == getParent() ? "" : getParent().getString()) + (0 == getDepth() ? "" : getToken());
+    return appendPath(new StringBuilder(getDepth())).toString();
+  }
+
+  /**
+   * Writes the raw tokens on the path from the root to this node, control tokens included, into the start of
+   * {@code buffer}, which must hold at least {@link #getDepth()} chars. Returns the number of chars written.
+   */
+  public int pathChars(@Nonnull char[] buffer) {
+    int depth = getDepth();
+    if (null == parent && trie.hasUniqueParents()) {
+      int node = index;
+      for (int i = depth - 1; i >= 0; i--) {
+        buffer[i] = trie.nodes.getToken(node);
+        node = trie.getParentIndex(node);
+      }
+    } else {
+      TrieNode node = this;
+      for (int i = depth - 1; i >= 0; i--) {
+        buffer[i] = node.getChar();
+        node = node.getParent();
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Appends the same text as {@link #getString()}, walking the parent chain once.
+   */
+  @Nonnull
+  public StringBuilder appendPath(@Nonnull StringBuilder builder) {
+    int start = builder.length();
+    int depth = getDepth();
+    builder.setLength(start + depth);
+    if (null == parent && trie.hasUniqueParents()) {
+      int node = index;
+      for (int i = start + depth - 1; i >= start; i--) {
+        builder.setCharAt(i, trie.nodes.getToken(node));
+        node = trie.getParentIndex(node);
+      }
+    } else {
+      TrieNode node = this;
+      for (int i = start + depth - 1; i >= start; i--) {
+        builder.setCharAt(i, node.getChar());
+        node = node.getParent();
+      }
+    }
+    int end = start;
+    for (int i = start; i < start + depth; i++) {
+      char c = builder.charAt(i);
+      if (c != NodewalkerCodec.FALLBACK && c != NodewalkerCodec.END_OF_STRING && c != NodewalkerCodec.ESCAPE)
+        builder.setCharAt(end++, c);
+    }
+    builder.setLength(end);
+    return builder;
   }
 
   @Nonnull
@@ -204,45 +253,25 @@ public class TrieNode {
 
   @Nullable
   public TrieNode godparent() {
-    if (0 == getDepth())
+    int godparentIndex = trie.godparentOf(this.index);
+    if (godparentIndex < 0)
       return null;
-    TrieNode root = trie.root();
-    if (1 == getDepth())
-      return root;
-    if (null != trie.godparentIndex && trie.godparentIndex.length > index) {
-      int godparentIndex = trie.godparentIndex[this.index];
-      if (godparentIndex >= 0) {
-        return newNode(godparentIndex);
-      }
-    }
-    TrieNode parent = this.getParent();
-    TrieNode godparent;
-    if (null == parent) {
-      godparent = root;
-    } else {
-      TrieNode greatgodparent = parent.godparent();
-      if (null == greatgodparent) {
-        godparent = root;
-      } else {
-        godparent = greatgodparent.getChild(getChar()).map(x -> (TrieNode) x).orElseGet(() -> root);
-      }
-      //assert(getString().isEmpty() || getString().substring(1).equals(godparent.getString()));
-    }
-    if (null != godparent && null != trie.godparentIndex && trie.godparentIndex.length > index) {
-      trie.godparentIndex[this.index] = godparent.index;
-    }
-    return godparent;
+    return 0 == godparentIndex ? trie.root() : newNode(godparentIndex);
+  }
+
+  @Nonnull
+  public NodeCursor cursor() {
+    return new NodeCursor(trie, index);
   }
 
   @Nonnull
   public TrieNode refresh() {
-    this.data = null;
     return this;
   }
 
   @Nonnull
   public String getString(TrieNode root) {
-    if (this == root)
+    if (this == root || null != root && index == root.index)
       return "";
     CharSequence parentStr = null == getParent() ? "" : getParent().getString(root);
     return parentStr + getToken();
@@ -250,7 +279,7 @@ public class TrieNode {
 
   @Nonnull
   public String getDebugString(TrieNode root) {
-    if (this == root)
+    if (this == root || null != root && index == root.index)
       return "";
     CharSequence parentStr = null == getParent() ? "" : getParent().getDebugString(root);
     return parentStr.toString() + getDebugToken();
@@ -272,41 +301,45 @@ public class TrieNode {
   }
 
   public Optional<? extends TrieNode> getChild(char token) {
-    NodeData data = getData();
-    assert data != null;
-    int min = data.firstChildIndex;
-    int max = data.firstChildIndex + data.numberOfChildren - 1;
-    while (min <= max) {
-      int i = (min + max) / 2;
-      TrieNode node = new TrieNode(this.trie, i, TrieNode.this);
-      char c = node.getChar();
-      int compare = Character.compare(c, token);
-      if (c < token) {
-        // node.getChar() < token
-        min = i + 1;
-      } else if (c > token) {
-        // node.getChar() > token
-        max = i - 1;
-      } else {
-        return Optional.of(node);
-      }
-    }
-    //assert !getChildren().keywords(x -> x.getChar() == token).findFirst().isPresent();
-    return Optional.empty();
+    int childIndex = findChild(token);
+    return childIndex < 0 ? Optional.empty() : Optional.of(new TrieNode(this.trie, childIndex, TrieNode.this));
   }
 
   public TrieNode traverse(@Nonnull String str) {
-    if (str.isEmpty()) {
-      return this;
+    return traverse(str, 0, str.length());
+  }
+
+  public TrieNode traverse(@Nonnull CharSequence str, int from, int to) {
+    if (!trie.hasUniqueParents())
+      return traversePath(str, from, to);
+    int node = index;
+    for (int i = from; i < to; i++) {
+      int child = trie.findChild(node, str.charAt(i));
+      if (child < 0)
+        break;
+      node = child;
     }
-    return getChild(str.charAt(0)).map(n -> n.traverse(str.substring(1))).orElse(this);
+    return node == index ? this : newNode(node);
+  }
+
+  @Nonnull
+  private TrieNode traversePath(@Nonnull CharSequence str, int from, int to) {
+    TrieNode node = this;
+    for (int i = from; i < to; i++) {
+      int child = trie.findChild(node.index, str.charAt(i));
+      if (child < 0)
+        break;
+      node = new TrieNode(trie, child, node);
+    }
+    return node;
   }
 
   public boolean containsCursor(long cursorId) {
-    if (cursorId < getData().firstCursorIndex) {
+    long firstCursorIndex = trie.nodes.getFirstCursorIndex(index);
+    if (cursorId < firstCursorIndex) {
       return false;
     }
-    return cursorId < getData().firstCursorIndex + getData().cursorCount;
+    return cursorId < firstCursorIndex + trie.nodes.getCursorCount(index);
   }
 
   public TrieNode traverse(long cursorId) {
@@ -365,31 +398,31 @@ public class TrieNode {
     return getChildrenMap().hashCode() ^ Long.hashCode(getCursorCount());
   }
 
+  @Nullable
   public TrieNode getContinuation(char c) {
-    return ((Optional<TrieNode>) getChild(c)).orElseGet(() -> {
-      TrieNode godparent = godparent();
-      if (null == godparent)
-        return null;
-      return godparent.getContinuation(c);
-    });
+    int continuation = trie.continuationOf(index, c);
+    return continuation < 0 ? null : newNode(continuation);
   }
 
-  @Nullable
+  @Nonnull
   NodeData update(@Nonnull Function<NodeData, NodeData> update) {
-    data = trie.nodes.update(index, update);
-    return data;
+    return trie.nodes.update(index, update);
+  }
+
+  int findChild(char token) {
+    return trie.findChild(index, token);
   }
 
   void writeChildren(@Nonnull TreeMap<Character, Long> counts) {
     int firstIndex = trie.nodes.length();
     counts.forEach((k, v) -> {
       if (v > 0)
-        trie.nodes.add(new NodeData(k, (short) -1, -1, v, -1));
+        trie.nodes.add(k, (short) -1, -1, v, -1);
     });
     short length = (short) (trie.nodes.length() - firstIndex);
     trie.ensureParentIndexCapacity(firstIndex, length, index);
-    update(n -> n.setFirstChildIndex(firstIndex).setNumberOfChildren(length));
-    data = null;
+    trie.nodes.setFirstChildIndex(index, firstIndex);
+    trie.nodes.setNumberOfChildren(index, length);
   }
 
   @Nonnull
@@ -398,7 +431,7 @@ public class TrieNode {
   }
 
   protected void decrementCursorCount(long count) {
-    this.trie.nodes.update(index, data -> data.setCursorCount(Math.max(data.cursorCount - count, 0)));
+    this.trie.nodes.setCursorCount(index, Math.max(this.trie.nodes.getCursorCount(index) - count, 0));
     if (null != getParent()) {
       getParent().decrementCursorCount(count);
     }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+import static com.simiacryptus.text.NodewalkerCodec.ESCAPE;
+import static com.simiacryptus.text.NodewalkerCodec.FALLBACK;
+
+/**
+ * Shrinks a built trie after the fact: children below a minimum count or outside the top K of their parent are
+ * dropped, and then, if a node budget remains exceeded, the lowest-count nodes are dropped until it fits. Pruning is
+ * always closed under ancestry. The kept nodes are written breadth-first into a new, densely numbered node table, with
+ * each child block's cursor ranges packed from its parent's first cursor.
+ * <p>
+ * With fallback rollup enabled, the counts of pruned children are added to their parent's
+ * {@link NodewalkerCodec#FALLBACK} child (created if needed), so the codecs keep a consistent interval for
+ * continuations that are no longer modeled.
+ * FALLBACK and ESCAPE children are never dropped by the minimum count or top-K rules.
+ */
+public class TriePruner {
+  private final CharTrie trie;
+  private long minCount = 0;
+  private int maxChildren = Integer.MAX_VALUE;
+  private int maxNodes = Integer.MAX_VALUE;
+  private int minWeight = 0;
+  private boolean fallback = false;
+
+  public TriePruner(@Nonnull CharTrie trie) {
+    this.trie = trie;
+  }
+
+  public long getMinCount() {
+    return minCount;
+  }
+
+  @Nonnull
+  public TriePruner setMinCount(long minCount) {
+    this.minCount = minCount;
+    return this;
+  }
+
+  public int getMaxChildren() {
+    return maxChildren;
+  }
+
+  @Nonnull
+  public TriePruner setMaxChildren(int maxChildren) {
+    this.maxChildren = maxChildren;
+    return this;
+  }
+
+  public int getMaxNodes() {
+    return maxNodes;
+  }
+
+  @Nonnull
+  public TriePruner setMaxNodes(int maxNodes) {
+    this.maxNodes = Math.max(1, maxNodes);
+    return this;
+  }
+
+  /**
+   * Sets the node budget from a size in bytes, as reported by {@link CharTrie#getMemorySize()}.
+   */
+  @Nonnull
+  public TriePruner setMaxBytes(long maxBytes) {
+    return setMaxNodes((int) Math.min(Integer.MAX_VALUE, maxBytes / NodeType.INSTANCE.getSize()));
+  }
+
+  public int getMinWeight() {
+    return minWeight;
+  }
+
+  /**
+   * Applies the minimum weight rule of {@link IndexBuilder} after the fact: a node keeps its children only if its
+   * godparent, resolved among the kept nodes, has more than {@code minWeight} cursors. Pruning a trie indexed without
+   * a minimum weight this way gives the nodes that indexing with one would.
+   */
+  @Nonnull
+  public TriePruner setMinWeight(int minWeight) {
+    this.minWeight = minWeight;
+    return this;
+  }
+
+  public boolean isFallback() {
+    return fallback;
+  }
+
+  @Nonnull
+  public TriePruner setFallback(boolean fallback) {
+    this.fallback = fallback;
+    return this;
+  }
+
+  @Nonnull
+  public CharTrie prune() {
+    NodeStore nodes = trie.nodes;
+    int[] parents = new int[nodes.length()];
+    int[] order = breadthFirst(nodes, parents);
+    boolean[] kept = new boolean[nodes.length()];
+    kept[0] = true;
+    int[] godparents = 0 < minWeight ? new int[nodes.length()] : null;
+    long[] scratch = new long[16];
+    for (int node : order) {
+      if (kept[node] && (null == godparents || isHeavy(nodes, node, parents, godparents, kept))) {
+        scratch = keepChildren(nodes, node, kept, scratch);
+      }
+    }
+    int keptCount = count(kept);
+    if (keptCount + fallbacksNeeded(nodes, order, kept) > maxNodes) {
+      boolean[] candidates = kept;
+      int budget = maxNodes;
+      do {
+        kept = selectBudget(nodes, order, parents, candidates, budget);
+        keptCount = count(kept);
+        budget -= Math.max(1, keptCount + fallbacksNeeded(nodes, order, kept) - maxNodes);
+      } while (keptCount + fallbacksNeeded(nodes, order, kept) > maxNodes && budget > 0);
+    }
+    return write(nodes, order, kept, keptCount + fallbacksNeeded(nodes, order, kept));
+  }
+
+  /**
+   * Marks the children of a kept node that pass the minimum count and top-K rules.
+   */
+  @Nonnull
+  private long[] keepChildren(@Nonnull NodeStore nodes, int node, @Nonnull boolean[] kept, @Nonnull long[] scratch) {
+    int firstChild = nodes.getFirstChildIndex(node);
+    int numberOfChildren = nodes.getNumberOfChildren(node);
+    if (firstChild < 0 || numberOfChildren <= 0)
+      return scratch;
+    long threshold = minCount;
+    int ties = Integer.MAX_VALUE;
+    if (numberOfChildren > maxChildren) {
+      if (scratch.length < numberOfChildren)
+        scratch = new long[numberOfChildren];
+      int ranked = 0;
+      for (int i = 0; i < numberOfChildren; i++) {
+        if (!isProtected(nodes.getToken(firstChild + i)))
+          scratch[ranked++] = nodes.getCursorCount(firstChild + i);
+      }
+      if (ranked > maxChildren) {
+        Arrays.sort(scratch, 0, ranked);
+        long kth = scratch[ranked - maxChildren];
+        if (kth >= threshold) {
+          threshold = kth;
+          ties = maxChildren;
+          for (int i = ranked - 1; i >= 0 && scratch[i] > kth; i--)
+            ties--;
+        }
+      }
+    }
+    for (int i = 0; i < numberOfChildren; i++) {
+      int child = firstChild + i;
+      long count = nodes.getCursorCount(child);
+      if (isProtected(nodes.getToken(child))) {
+        kept[child] = true;
+      } else if (count > threshold || (count == threshold && count >= minCount && ties-- > 0)) {
+        kept[child] = true;
+      }
+    }
+    return scratch;
+  }
+
+  /**
+   * Resolves the godparent of a kept node as {@link CharTrie#godparentOf(int)} would in the pruned trie, falling back
+   * to the root when the suffix was not kept, and tests it against the minimum weight. Visited in breadth-first order,
+   * so every shallower node is already resolved.
+   */
+  private boolean isHeavy(@Nonnull NodeStore nodes, int node, @Nonnull int[] parents, @Nonnull int[] godparents,
+                          @Nonnull boolean[] kept) {
+    if (0 == node)
+      return true;
+    int parent = parents[node];
+    int godparent = 0;
+    if (0 != parent) {
+      int child = trie.findChild(godparents[parent], nodes.getToken(node));
+      if (child >= 0 && kept[child])
+        godparent = child;
+    }
+    godparents[node] = godparent;
+    return nodes.getCursorCount(godparent) > minWeight;
+  }
+
+  /**
+   * Keeps the root and the {@code budget - 1} highest-count candidates, preferring shallower nodes among equal counts.
+   */
+  @Nonnull
+  private static boolean[] selectBudget(@Nonnull NodeStore nodes, @Nonnull int[] order, @Nonnull int[] parents,
+                                        @Nonnull boolean[] candidates, int budget) {
+    long[] counts = new long[order.length];
+    int candidateCount = 0;
+    for (int node : order) {
+      if (0 != node && candidates[node])
+        counts[candidateCount++] = nodes.getCursorCount(node);
+    }
+    boolean[] kept = new boolean[candidates.length];
+    kept[0] = true;
+    int remaining = budget - 1;
+    if (remaining <= 0 || 0 == candidateCount)
+      return kept;
+    Arrays.sort(counts, 0, candidateCount);
+    long threshold = counts[Math.max(0, candidateCount - remaining)];
+    for (int node : order) {
+      if (0 != node && candidates[node] && kept[parents[node]] && nodes.getCursorCount(node) > threshold) {
+        kept[node] = true;
+        remaining--;
+      }
+    }
+    for (int node : order) {
+      if (remaining <= 0)
+        break;
+      if (0 != node && candidates[node] && kept[parents[node]] && nodes.getCursorCount(node) == threshold) {
+        kept[node] = true;
+        remaining--;
+      }
+    }
+    return kept;
+  }
+
+  private int fallbacksNeeded(@Nonnull NodeStore nodes, @Nonnull int[] order, @Nonnull boolean[] kept) {
+    if (!fallback)
+      return 0;
+    int needed = 0;
+    for (int node : order) {
+      if (!kept[node])
+        continue;
+      int firstChild = nodes.getFirstChildIndex(node);
+      boolean anyKept = false;
+      boolean anyPruned = false;
+      boolean hasFallback = false;
+      for (int i = 0; i < nodes.getNumberOfChildren(node); i++) {
+        int child = firstChild + i;
+        if (kept[child]) {
+          anyKept = true;
+          hasFallback |= FALLBACK == nodes.getToken(child);
+        } else {
+          anyPruned = true;
+        }
+      }
+      if (anyKept && anyPruned && !hasFallback)
+        needed++;
+    }
+    return needed;
+  }
+
+  @Nonnull
+  private CharTrie write(@Nonnull NodeStore nodes, @Nonnull int[] order, @Nonnull boolean[] kept, int capacity) {
+    NodeStore out = new NodeStore(capacity);
+    int[] sources = new int[Math.max(capacity, 1)];
+    out.add(nodes.getToken(0), (short) -1, -1, nodes.getCursorCount(0), nodes.getFirstCursorIndex(0));
+    sources[0] = 0;
+    for (int i = 0; i < out.length(); i++) {
+      int source = sources[i];
+      if (source < 0)
+        continue;
+      int firstChild = nodes.getFirstChildIndex(source);
+      int block = out.length();
+      long position = out.getFirstCursorIndex(i);
+      long pruned = 0;
+      int fallbackChild = -1;
+      for (int j = 0; j < nodes.getNumberOfChildren(source); j++) {
+        int child = firstChild + j;
+        long count = nodes.getCursorCount(child);
+        if (kept[child]) {
+          int index = out.add(nodes.getToken(child), (short) -1, -1, count, position);
+          sources[index] = child;
+          position += count;
+          if (FALLBACK == nodes.getToken(child))
+            fallbackChild = index;
+        } else {
+          pruned += count;
+        }
+      }
+      if (fallback && 0 < pruned && out.length() > block) {
+        if (fallbackChild >= 0) {
+          out.setCursorCount(fallbackChild, out.getCursorCount(fallbackChild) + pruned);
+        } else {
+          int index = out.add(FALLBACK, (short) -1, -1, pruned, position);
+          sources[index] = -1;
+        }
+      }
+      if (out.length() > block) {
+        out.setFirstChildIndex(i, block);
+        out.setNumberOfChildren(i, (short) (out.length() - block));
+      }
+    }
+    return new CharTrie(out).indexGodparents();
+  }
+
+  @Nonnull
+  private static int[] breadthFirst(@Nonnull NodeStore nodes, @Nonnull int[] parents) {
+    int[] order = new int[nodes.length()];
+    int size = 1;
+    parents[0] = 0;
+    for (int i = 0; i < size; i++) {
+      int firstChild = nodes.getFirstChildIndex(order[i]);
+      for (int j = 0; j < nodes.getNumberOfChildren(order[i]); j++) {
+        parents[firstChild + j] = order[i];
+        order[size++] = firstChild + j;
+      }
+    }
+    return Arrays.copyOf(order, size);
+  }
+
+  private static int count(@Nonnull boolean[] kept) {
+    int count = 0;
+    for (boolean k : kept) {
+      if (k)
+        count++;
+    }
+    return count;
+  }
+
+  private static boolean isProtected(char token) {
+    return FALLBACK == token || ESCAPE == token;
+  }
+}
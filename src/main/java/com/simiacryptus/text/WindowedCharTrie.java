@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.text;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A model over a sliding window of recent documents, for streaming use. Documents are collected into epochs; when an
+ * epoch fills (or {@link #rotate()} is called) it is indexed into its own trie, and only the most recent
+ * {@code windowEpochs} epoch tries are kept. The model is their sum, optionally weighting each epoch by
+ * {@code decay^age} so that older epochs fade out before they are evicted. Memory is bounded by the window.
+ * <p>
+ * Epochs are indexed without a minimum weight, since a continuation rare in every epoch may still be frequent across
+ * the window; the minimum weight is applied once to the summed model. Rotations are serialized among themselves but
+ * do not hold up {@link #addDocument(CharSequence)}, which keeps filling the next epoch while the model is rebuilt.
+ */
+public class WindowedCharTrie {
+  private final int maxLevels;
+  private final int minWeight;
+  private final Deque<CharTrie> epochs = new ArrayDeque<>();
+  private final List<CharSequence> pending = new ArrayList<>();
+  private final AtomicBoolean rotating = new AtomicBoolean(false);
+  private final Object rotationLock = new Object();
+  private long pendingSize = 0;
+  private long epochSize = 1024 * 1024;
+  private int windowEpochs = 24;
+  private double decay = 1.0;
+  private volatile CharTrie model = emptyTrie();
+
+  public WindowedCharTrie(int maxLevels, int minWeight) {
+    this.maxLevels = maxLevels;
+    this.minWeight = minWeight;
+  }
+
+  public long getEpochSize() {
+    return epochSize;
+  }
+
+  /**
+   * Characters collected before an epoch is closed automatically; use {@link #rotate()} for time-based epochs.
+   */
+  @Nonnull
+  public WindowedCharTrie setEpochSize(long epochSize) {
+    this.epochSize = epochSize;
+    return this;
+  }
+
+  public int getWindowEpochs() {
+    return windowEpochs;
+  }
+
+  @Nonnull
+  public WindowedCharTrie setWindowEpochs(int windowEpochs) {
+    synchronized (rotationLock) {
+      this.windowEpochs = windowEpochs;
+      evict();
+    }
+    return this;
+  }
+
+  public double getDecay() {
+    return decay;
+  }
+
+  /**
+   * Weight factor per epoch of age; 1.0 weighs the whole window equally.
+   */
+  @Nonnull
+  public WindowedCharTrie setDecay(double decay) {
+    synchronized (rotationLock) {
+      this.decay = decay;
+      rebuildModel();
+    }
+    return this;
+  }
+
+  public int getEpochCount() {
+    synchronized (rotationLock) {
+      return epochs.size();
+    }
+  }
+
+  /**
+   * The current model: the weighted sum of the epochs in the window. Documents in the open epoch are not included.
+   */
+  @Nonnull
+  public CharTrie getModel() {
+    return model;
+  }
+
+  @Nonnull
+  public TextAnalysis getAnalyzer() {
+    return new TextAnalysis(model);
+  }
+
+  public double entropy(@Nonnull CharSequence text) {
+    return getAnalyzer().entropy(text);
+  }
+
+  public void addDocument(@Nonnull CharSequence document) {
+    synchronized (pending) {
+      pending.add(document);
+      pendingSize += document.length() + 1;
+      if (pendingSize < epochSize)
+        return;
+    }
+    if (rotating.compareAndSet(false, true)) {
+      try {
+        do {
+          rotate();
+        } while (isEpochFull());
+      } finally {
+        rotating.set(false);
+      }
+    }
+  }
+
+  /**
+   * Closes the open epoch, evicts epochs that fell out of the window and refreshes the model.
+   */
+  @Nonnull
+  public WindowedCharTrie rotate() {
+    synchronized (rotationLock) {
+      List<CharSequence> documents;
+      synchronized (pending) {
+        documents = new ArrayList<>(pending);
+        pending.clear();
+        pendingSize = 0;
+      }
+      if (!documents.isEmpty()) {
+        CharTrieIndex index = new CharTrieIndex();
+        documents.forEach(index::addDocument);
+        epochs.addLast(index.index(maxLevels, 0).truncate());
+      } else {
+        epochs.addLast(emptyTrie());
+      }
+      evict();
+    }
+    return this;
+  }
+
+  private boolean isEpochFull() {
+    synchronized (pending) {
+      return pendingSize >= epochSize;
+    }
+  }
+
+  private void evict() {
+    while (epochs.size() > windowEpochs) {
+      epochs.removeFirst();
+    }
+    rebuildModel();
+  }
+
+  private void rebuildModel() {
+    List<CharTrie> tries = new ArrayList<>(epochs);
+    double[] weights = new double[tries.size()];
+    double weight = 1.0;
+    for (int i = tries.size() - 1; i >= 0; i--) {
+      weights[i] = weight;
+      weight *= decay;
+    }
+    if (tries.isEmpty()) {
+      model = emptyTrie();
+      return;
+    }
+    CharTrie sum = new TrieMerger(tries, 1.0 == decay ? null : weights).merge();
+    model = 0 < minWeight ? new TriePruner(sum).setMinWeight(minWeight).prune() : sum;
+  }
+
+  @Nonnull
+  private static CharTrie emptyTrie() {
+    return new CharTrie(new NodeStore(new NodeData(NodewalkerCodec.END_OF_STRING, (short) -1, -1, 0, 0)))
+        .indexGodparents();
+  }
+}
@@ -36,11 +36,16 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TrieTest {
   public static final File outPath = new File("src/site/resources/");
@@ -88,6 +93,57 @@ public class TrieTest {
     return e.getKey().length();
   }
 
+  private static void assertCounts(@Nonnull CharTrie expected, @Nonnull IncrementalCharTrie actual,
+                                   @Nonnull Collection<String> queries) {
+    for (String query : queries) {
+      TrieNode node = expected.traverse(query);
+      long count = node.getString().equals(query) ? node.getCursorCount() : 0;
+      assertEquals(count, actual.getCursorCount(query), query);
+    }
+  }
+
+  /**
+   * The recursive cursor total and position passes that recomputeCursorDetails replaced, kept as a reference.
+   */
+  private static long recomputeTotals(@Nonnull CharTrie trie, @Nonnull TrieNode node) {
+    List<TrieNode> children = node.getChildren().collect(Collectors.toList());
+    if (children.isEmpty())
+      return node.getCursorCount();
+    long total = children.stream().mapToLong(child -> recomputeTotals(trie, child)).sum();
+    trie.nodes.setCursorCount(node.index, total);
+    return total;
+  }
+
+  private static void recomputePositions(@Nonnull CharTrie trie, @Nonnull TrieNode node, long position) {
+    trie.nodes.setFirstCursorIndex(node.index, position);
+    for (TrieNode child : node.getChildren().collect(Collectors.toList())) {
+      recomputePositions(trie, child, position);
+      position += child.getCursorCount();
+    }
+  }
+
+  @Nonnull
+  private static Set<String> substrings(@Nonnull List<String> documents, int maxLength) {
+    Set<String> substrings = new TreeSet<>();
+    for (String document : documents) {
+      for (int from = 0; from < document.length(); from++) {
+        for (int to = from + 1; to <= Math.min(document.length(), from + maxLength); to++) {
+          substrings.add(document.substring(from, to));
+        }
+      }
+    }
+    return substrings;
+  }
+
+  @Nonnull
+  private static String randomText(@Nonnull Random random, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) (0x400 + (int) Math.abs(random.nextGaussian() * 60) % 120);
+    }
+    return new String(chars);
+  }
+
   @Test
   @Tag("UnitTest")
   public void testFunctionality() {
@@ -111,6 +167,462 @@ public class TrieTest {
     assertEquals(1, tree.traverse("a quick").getCursorCount());
   }
 
+  @Test
+  @Tag("UnitTest")
+  public void testMappedTrie() throws IOException {
+    CharTrieIndex tree = new CharTrieIndex();
+    tree.addDocument("a quick brown fox jumped over the lazy dog");
+    tree.addDocument("this is a test. this is only a test. - nikola tesla");
+    tree.index(3);
+    File file = File.createTempFile("trie", ".bin");
+    file.deleteOnExit();
+    MappedCharTrie.write(tree, file);
+    MappedCharTrie mapped = MappedCharTrie.open(file);
+    assertEquals(tree.getNodeCount(), mapped.getNodeCount());
+    assertEquals(8, mapped.traverse("t").getCursorCount());
+    assertEquals("tes", mapped.traverse("test").getString());
+    assertEquals("es", mapped.traverse("tes").godparent().getString());
+    assertEquals(tree.truncate(), mapped.copy());
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testCursorGodparent() {
+    CharTrie words = CharTrieIndex.indexWords(Arrays.asList("cat", "at", "dog"), Integer.MAX_VALUE, 0);
+    NodeCursor cursor = words.cursor();
+    assertEquals(3, cursor.traverse("cat", 0, 3));
+    assertEquals(3, cursor.depth());
+    assertTrue(cursor.godparent());
+    assertEquals(2, cursor.depth());
+    assertEquals("at", cursor.toNode().getString());
+    cursor.reset();
+    assertEquals(3, cursor.traverse("dog", 0, 3));
+    assertTrue(cursor.godparent());
+    assertEquals(0, cursor.getIndex());
+    assertEquals(0, cursor.depth());
+    assertEquals(2, cursor.traverse("at", 0, 2));
+    assertEquals(2, cursor.depth());
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testParallelIndex() {
+    Random random = new Random(7);
+    List<String> documents = IntStream.range(0, 2000).mapToObj(i -> randomText(random, 40))
+        .collect(Collectors.toList());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int minWeight : new int[]{0, 2}) {
+        CharTrieIndex sequential = new CharTrieIndex();
+        CharTrieIndex parallel = new CharTrieIndex();
+        documents.forEach(sequential::addDocument);
+        documents.forEach(parallel::addDocument);
+        new IndexBuilder(sequential).setMaxLevels(6).setMinWeight(minWeight).build();
+        new IndexBuilder(parallel).setMaxLevels(6).setMinWeight(minWeight).setParallel(true).setPool(pool).build();
+        assertEquals(sequential.getNodeCount(), parallel.getNodeCount());
+        assertEquals(sequential, parallel);
+        assertEquals(sequential.cursors, parallel.cursors);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testSuffixArrayIndex() {
+    List<CharSequence> documents = Arrays.asList("a quick brown fox jumped over the lazy dog",
+        "this is a test. this is only a test. - nikola tesla", "", "test");
+    CharTrieIndex tree = new CharTrieIndex();
+    documents.forEach(tree::addDocument);
+    tree.index(5, 1);
+    CharTrieIndex sorted = CharTrieIndex.indexFulltextBySuffixArray(documents, 5, 1);
+    assertEquals(tree.truncate(), sorted.truncate());
+    assertEquals(sorted.cursors, sorted.copy().cursors);
+    sorted.traverse("tes").getCursors().forEach(cursor -> assertEquals("tes",
+        cursor.getDocument().subSequence(cursor.data.position, cursor.data.position + 3).toString()));
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testMerge() {
+    List<CharTrie> shards = Stream.of("a quick brown fox jumped over the lazy dog",
+        "this is a test. this is only a test. - nikola tesla", "testing, testing").map(document -> {
+      CharTrieIndex tree = new CharTrieIndex();
+      tree.addDocument(document);
+      return (CharTrie) tree.index(4);
+    }).collect(Collectors.toList());
+    CharTrie merged = CharTrie.merge(shards);
+    CharTrie added = shards.get(0).add(shards.get(1)).add(shards.get(2));
+    assertEquals(added.getNodeCount(), merged.getNodeCount());
+    assertEquals(added.traverse("tes").getCursorCount(), merged.traverse("tes").getCursorCount());
+    assertEquals("es", merged.traverse("tes").godparent().getString());
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testIncrementalCompaction() {
+    Random random = new Random(11);
+    List<String> documents = IntStream.range(0, 400).mapToObj(i -> randomText(random, 30))
+        .collect(Collectors.toList());
+    IncrementalCharTrie incremental = new IncrementalCharTrie(
+        CharTrieIndex.indexFulltext(new ArrayList<>(documents.subList(0, 100)), 4, 0), 4)
+        .setDeltaSize(500).setCompactor(null);
+    documents.subList(100, documents.size()).forEach(incremental::addDocument);
+    incremental.flush();
+    assertTrue(incremental.getDeltaCount() > 1);
+    CharTrie expected = CharTrieIndex.indexFulltext(new ArrayList<>(documents), 4, 0);
+    Set<String> queries = substrings(documents.subList(0, 50), 5);
+    assertCounts(expected, incremental, queries);
+    incremental.compact();
+    assertEquals(0, incremental.getDeltaCount());
+    assertEquals(expected.getNodeCount(), incremental.getBase().getNodeCount());
+    assertCounts(expected, incremental, queries);
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testPrunedBaseCompaction() {
+    IncrementalCharTrie incremental = new IncrementalCharTrie(
+        CharTrieIndex.indexFulltext(Arrays.asList("abababababcdcdcdcdxyzxyz"), 4, 3), 4).setCompactor(null);
+    incremental.addDocument("xyq");
+    incremental.flush();
+    List<String> queries = Arrays.asList("", "a", "ab", "c", "x", "xy", "xyz", "xyq", "y", "q");
+    Map<String, Long> counts = new HashMap<>();
+    Map<String, Map<Character, Long>> continuations = new HashMap<>();
+    for (String query : queries) {
+      counts.put(query, incremental.getCursorCount(query));
+      continuations.put(query, incremental.getContinuations(query));
+    }
+    assertEquals(3, (long) counts.get("x"));
+    incremental.compact();
+    assertEquals(0, incremental.getDeltaCount());
+    for (String query : queries) {
+      assertEquals((long) counts.get(query), incremental.getCursorCount(query), query);
+      assertEquals(continuations.get(query), incremental.getContinuations(query), query);
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testConcurrentCompaction() throws InterruptedException {
+    Random random = new Random(13);
+    List<String> documents = IntStream.range(0, 2000).mapToObj(i -> randomText(random, 30))
+        .collect(Collectors.toList());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    IncrementalCharTrie incremental = new IncrementalCharTrie(new CharTrieIndex().index(4, 0), 4)
+        .setDeltaSize(300).setMaxDeltas(2).setCompactor(pool);
+    AtomicBoolean done = new AtomicBoolean(false);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    Thread[] compactors = new Thread[3];
+    for (int i = 0; i < compactors.length; i++) {
+      compactors[i] = new Thread(() -> {
+        while (!done.get()) {
+          incremental.compact();
+        }
+      });
+      compactors[i].setUncaughtExceptionHandler((thread, e) -> errors.add(e));
+      compactors[i].start();
+    }
+    documents.forEach(incremental::addDocument);
+    done.set(true);
+    for (Thread compactor : compactors) {
+      compactor.join();
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+    assertEquals(Collections.emptyList(), errors);
+    incremental.flush().compact();
+    assertCounts(CharTrieIndex.indexFulltext(new ArrayList<>(documents), 4, 0), incremental,
+        substrings(documents.subList(0, 50), 5));
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testExternalIndex() {
+    Random random = new Random(17);
+    List<String> documents = IntStream.range(0, 300).mapToObj(i -> randomText(random, 30))
+        .collect(Collectors.toList());
+    // 500 cursors per window: the root and the largest nodes take the scratch-file path
+    ExternalIndexBuilder builder = new ExternalIndexBuilder().setMaxLevels(5).setMemoryBudget(500 * 18);
+    for (int minWeight : new int[]{0, 2}) {
+      CharTrieIndex tree = new CharTrieIndex();
+      documents.forEach(tree::addDocument);
+      CharTrie expected = tree.index(5, minWeight).truncate();
+      builder.setMinWeight(minWeight);
+      List<CharTrie> built = IntStream.range(0, 2).parallel().mapToObj(i -> builder.build(documents.stream()))
+          .collect(Collectors.toList());
+      for (CharTrie trie : built) {
+        assertEquals(expected.getNodeCount(), trie.getNodeCount());
+        assertEquals(expected, trie);
+      }
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testWindowedCounts() {
+    Random random = new Random(19);
+    List<List<String>> epochs = IntStream.range(0, 6).mapToObj(e -> IntStream.range(0, 100)
+        .mapToObj(i -> randomText(random, 20)).collect(Collectors.toList())).collect(Collectors.toList());
+    WindowedCharTrie windowed = new WindowedCharTrie(4, 3).setEpochSize(Long.MAX_VALUE).setWindowEpochs(3);
+    assertEquals(0, windowed.getModel().root().getCursorCount());
+    assertEquals(0, windowed.getModel().traverse("a").getCursorCount());
+    for (List<String> epoch : epochs) {
+      epoch.forEach(windowed::addDocument);
+      windowed.rotate();
+    }
+    assertEquals(3, windowed.getEpochCount());
+    List<String> window = epochs.subList(3, 6).stream().flatMap(List::stream).collect(Collectors.toList());
+    CharTrieIndex tree = new CharTrieIndex();
+    window.forEach(tree::addDocument);
+    CharTrie expected = tree.index(4, 3);
+    CharTrie model = windowed.getModel();
+    assertEquals(expected.getNodeCount(), model.getNodeCount());
+    for (String query : substrings(window, 5)) {
+      TrieNode expectedNode = expected.traverse(query);
+      TrieNode actualNode = model.traverse(query);
+      assertEquals(expectedNode.getString(), actualNode.getString(), query);
+      assertEquals(expectedNode.getCursorCount(), actualNode.getCursorCount(), query);
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testPruneTopK() {
+    CharTrie words = CharTrieIndex.indexWords(Arrays.asList("a", "a", "a", "a", "a", "b", "b", "b", "c", "c", "c", "d",
+        "d", "d", "e"), Integer.MAX_VALUE, 0);
+    assertEquals(new TreeSet<>(Arrays.asList('a', 'b')), words.prune(0, 2).root().getChildrenMap().keySet());
+    assertEquals(new TreeSet<>(Arrays.asList('a', 'b', 'c', 'd')),
+        words.prune(3, 4).root().getChildrenMap().keySet());
+    assertEquals(new TreeSet<>(Collections.singletonList('a')), words.prune(4, 2).root().getChildrenMap().keySet());
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testPruneBudget() {
+    Random random = new Random(23);
+    CharTrieIndex tree = new CharTrieIndex();
+    for (int i = 0; i < 300; i++) {
+      tree.addDocument(randomText(random, 20));
+    }
+    CharTrie trie = tree.index(4).truncate();
+    for (int maxNodes : new int[]{1, 2, 17, 100, 1000, trie.getNodeCount()}) {
+      CharTrie compacted = trie.compact(maxNodes);
+      assertEquals(maxNodes, compacted.getNodeCount());
+      compacted.root().visitFirst(node -> {
+        TrieNode original = trie.traverse(node.getRawString());
+        assertEquals(node.getRawString(), original.getRawString());
+        assertEquals(original.getCursorCount(), node.getCursorCount());
+      });
+    }
+    CharTrie pruned = new TriePruner(trie).setMinCount(2).setMaxChildren(5).setMaxNodes(500).setFallback(true).prune();
+    assertTrue(pruned.getNodeCount() <= 500);
+    pruned.root().visitFirst(node -> {
+      if (node.getRawString().indexOf(NodewalkerCodec.FALLBACK) >= 0)
+        return;
+      long original = trie.traverse(node.getRawString()).getCursorCount();
+      assertEquals(original, node.getCursorCount());
+      if (node.hasChildren()) {
+        assertEquals(original, node.getChildren().mapToLong(TrieNode::getCursorCount).sum(), node.getRawString());
+        assertTrue(node.getChildren().filter(child -> NodewalkerCodec.FALLBACK != child.getChar()).count() <= 5);
+      }
+    });
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testMinimize() {
+    List<CharSequence> words = Stream.of("walk", "talk", "jump", "play", "work").flatMap(stem ->
+        Stream.of("", "s", "ed", "ing", "er").map(suffix -> (CharSequence) (stem + suffix))).collect(Collectors.toList());
+    CharTrie tree = CharTrieIndex.indexWords(words, Integer.MAX_VALUE, 0);
+    MinimizedCharTrie minimized = tree.minimize();
+    assertTrue(minimized.getNodeCount() < tree.getNodeCount());
+    assertEquals(tree.traverse("ing").getCursorCount(), minimized.traverse("ing").getCursorCount());
+    assertEquals(tree.traverse("alk").getCursorCount(), minimized.traverse("alk").getCursorCount());
+    assertEquals("walki", minimized.traverse("walki").getString());
+    assertEquals(tree.traverse("wor").getChildrenMap().keySet(), minimized.traverse("wor").getChildrenMap().keySet());
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testMinimizedCursor() {
+    List<CharSequence> words = Stream.of("walk", "talk", "jump").flatMap(stem ->
+        Stream.of("", "s", "ed", "ing").map(suffix -> (CharSequence) (stem + suffix))).collect(Collectors.toList());
+    CharTrie tree = CharTrieIndex.indexWords(words, Integer.MAX_VALUE, 0);
+    MinimizedCharTrie minimized = tree.minimize();
+    for (CharSequence word : words) {
+      NodeCursor expected = tree.cursor();
+      NodeCursor cursor = minimized.cursor();
+      assertEquals(word.length(), cursor.traverse(word, 0, word.length()));
+      expected.traverse(word, 0, word.length());
+      assertEquals(word.length(), cursor.depth());
+      assertEquals(expected.count(), cursor.count());
+      assertEquals(expected.childCount(), cursor.childCount());
+      TrieNode node = cursor.toNode();
+      assertEquals(expected.count(), node.getCursorCount());
+      assertEquals(expected.toNode().getChildrenMap().keySet(), node.getChildrenMap().keySet());
+      assertThrows(UnsupportedOperationException.class, cursor::parent);
+    }
+    assertThrows(UnsupportedOperationException.class, minimized::matcher);
+    assertThrows(UnsupportedOperationException.class, minimized::dictionaryMatcher);
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testFrozenThroughput() {
+    CharTrieIndex tree = new CharTrieIndex();
+    IntStream.range(0, 10000).parallel().forEach(i -> tree.addDocument(UUID.randomUUID().toString()));
+    tree.index(8);
+    List<String> queries = IntStream.range(0, 200000).mapToObj(i -> UUID.randomUUID().toString().substring(0, 8))
+        .collect(Collectors.toList());
+    Map<String, Long> checksums = new LinkedHashMap<>();
+    for (CharTrie trie : Arrays.asList(tree.truncate(), tree.freeze())) {
+      long start = System.nanoTime();
+      long checksum = queries.parallelStream().mapToLong(query -> {
+        TrieNode node = trie.traverse(query);
+        TrieNode godparent = node.godparent();
+        return node.getDepth() + node.getString().length() + (null == godparent ? 0 : godparent.getDepth());
+      }).sum();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      String name = trie.isFrozen() ? "frozen" : "mutable";
+      System.out.println(String.format("%s: %.0f queries/sec on %s threads", name, queries.size() / seconds,
+          ForkJoinPool.commonPool().getParallelism() + 1));
+      checksums.put(name, checksum);
+    }
+    assertEquals(checksums.get("mutable"), checksums.get("frozen"));
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testChildTableTraverse() {
+    Random random = new Random(42);
+    CharTrieIndex tree = new CharTrieIndex();
+    for (int i = 0; i < 3000; i++) {
+      tree.addDocument(randomText(random, 60));
+    }
+    CharTrie trie = tree.index(6).truncate();
+    CharTrie plain = trie.copy();
+    plain.childTable = null;
+    List<String> queries = IntStream.range(0, 300000).mapToObj(i -> randomText(random, 6)).collect(Collectors.toList());
+    Map<String, Long> checksums = new LinkedHashMap<>();
+    for (CharTrie t : Arrays.asList(plain, trie, plain, trie)) {
+      String name = null == t.childTable ? "search" : "table";
+      long start = System.nanoTime();
+      long checksum = 0;
+      for (String query : queries) {
+        checksum += t.traverse(query).index;
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%s: %.0f traversals/sec", name, queries.size() / seconds));
+      checksums.put(name, checksum);
+    }
+    assertEquals(checksums.get("search"), checksums.get("table"));
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testChildTableMerged() {
+    Random random = new Random(29);
+    List<CharTrie> shards = IntStream.range(0, 3).mapToObj(s -> {
+      CharTrieIndex tree = new CharTrieIndex();
+      for (int i = 0; i < 500; i++) {
+        tree.addDocument(randomText(random, 40));
+      }
+      return (CharTrie) tree.index(4);
+    }).collect(Collectors.toList());
+    CharTrie merged = CharTrie.merge(shards);
+    assertTrue(null != merged.childTable);
+    CharTrie plain = merged.copy();
+    plain.childTable = null;
+    for (int i = 0; i < 20000; i++) {
+      String query = randomText(random, 4);
+      assertEquals(plain.traverse(query).index, merged.traverse(query).index, query);
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testRecomputeCursorDetails() {
+    CharTrieIndex tree = new CharTrieIndex();
+    tree.addDocument("a quick brown fox jumped over the lazy dog");
+    tree.addDocument("this is a test. this is only a test. - nikola tesla");
+    tree.index(4);
+    CharTrie rewritten = tree.rewrite((node, children) -> {
+      TreeMap<Character, Long> counts = new TreeMap<>();
+      children.forEach((token, child) -> counts.put(token, child.getCursorCount() % 3 + 1));
+      return counts;
+    });
+    for (CharTrie actual : Arrays.asList(tree.reverse(), rewritten)) {
+      CharTrie expected = actual.copy();
+      for (int i = 0; i < expected.getNodeCount(); i++) {
+        if (expected.nodes.getNumberOfChildren(i) > 0)
+          expected.nodes.setCursorCount(i, 0);
+        expected.nodes.setFirstCursorIndex(i, -1);
+      }
+      recomputeTotals(expected, expected.root());
+      recomputePositions(expected, expected.root(), 0);
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testContextMatcher() {
+    CharTrieIndex tree = new CharTrieIndex();
+    tree.addDocument("a quick brown fox jumped over the lazy dog");
+    tree.addDocument("this is a test. this is only a test. - nikola tesla");
+    CharTrie trie = tree.index(6).truncate();
+    String text = "the quick test of the lazy tesla";
+    trie.matcher().scan(text, matcher -> {
+      String prefix = text.substring(0, (int) matcher.position());
+      int longest = 0;
+      for (int length = 1; length <= prefix.length(); length++) {
+        String suffix = prefix.substring(prefix.length() - length);
+        if (trie.traverse(suffix).getString().equals(suffix))
+          longest = length;
+      }
+      assertEquals(longest, matcher.depth());
+      assertEquals(prefix.substring(prefix.length() - longest), matcher.toNode().getString());
+    });
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testDictionaryMatcher() {
+    CharTrie dictionary = CharTrieIndex.indexWords(Arrays.asList("he", "she", "his", "hers"), Integer.MAX_VALUE, 0);
+    List<String> hits = new ArrayList<>();
+    DictionaryMatcher matcher = dictionary.dictionaryMatcher();
+    matcher.scan("ushers", (start, end, node) -> hits.add(start + "-" + end + ":" + matcher.getNode(node).getString()));
+    assertEquals(Arrays.asList("1-4:she", "2-4:he", "2-6:hers"), hits);
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testFuzzyMatch() {
+    CharTrie dictionary = CharTrieIndex.indexWords(
+        Arrays.asList("spell", "spell", "spelt", "smell", "spill", "shell", "sell", "spel", "spel", "spells", "pelts"),
+        Integer.MAX_VALUE, 0);
+    List<String> matches = dictionary.fuzzyMatch("sepll", 2, 3).stream().map(TrieNode::getString)
+        .collect(Collectors.toList());
+    assertEquals(Arrays.asList("spell", "sell", "spel"), matches);
+    assertEquals(Collections.singletonList("pelts"), dictionary.fuzzyMatch("pelst", 1, 10).stream()
+        .map(TrieNode::getString).collect(Collectors.toList()));
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testCompletionIndex() {
+    CharTrie dictionary = CharTrieIndex.indexWords(
+        Arrays.asList("car", "car", "car", "cart", "cart", "care", "cat", "cab", "cab", "dog"), Integer.MAX_VALUE, 0);
+    CompletionIndex index = dictionary.completionIndex(3);
+    assertEquals(Arrays.asList("car", "cab", "cart"),
+        index.complete("ca", 5).stream().map(TrieNode::getString).collect(Collectors.toList()));
+    assertEquals(Collections.singletonList("car"),
+        index.complete("", 1).stream().map(TrieNode::getString).collect(Collectors.toList()));
+    assertEquals(Collections.emptyList(), index.complete("cow", 3));
+  }
+
   @Test
   @Tag("UnitTest")
   public void testPerformance() {